@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.benchmark;
+
+import java.math.BigDecimal;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.rasifix.saj.JsonContentHandler;
+
+/**
+ * Handler that passes all events to a {@link Blackhole}, so that measuring
+ * the reader is not distorted by what a real handler does with the events.
+ *
+ * @author rasifix
+ */
+public class BlackholeHandler implements JsonContentHandler {
+
+	private final Blackhole blackhole;
+
+	public BlackholeHandler(Blackhole blackhole) {
+		this.blackhole = blackhole;
+	}
+
+	public void startObject() {
+		blackhole.consume(1);
+	}
+
+	public void startMember(String name) {
+		blackhole.consume(name);
+	}
+
+	public void endMember() {
+		blackhole.consume(2);
+	}
+
+	public void endObject() {
+		blackhole.consume(3);
+	}
+
+	public void startArray() {
+		blackhole.consume(4);
+	}
+
+	public void endArray() {
+		blackhole.consume(5);
+	}
+
+	public void value(String value) {
+		blackhole.consume(value);
+	}
+
+	public void value(double value) {
+		blackhole.consume(value);
+	}
+
+	public void value(int value) {
+		blackhole.consume(value);
+	}
+
+	public void value(long value) {
+		blackhole.consume(value);
+	}
+
+	public void value(BigDecimal value) {
+		blackhole.consume(value);
+	}
+
+	public void value(boolean value) {
+		blackhole.consume(value);
+	}
+
+	public void nullValue() {
+		blackhole.consume(6);
+	}
+
+}
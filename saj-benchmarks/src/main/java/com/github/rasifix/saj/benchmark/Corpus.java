@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates the JSON documents the benchmarks run on. Documents are
+ * generated from a fixed seed, so all runs see the same input. Every
+ * document is an object with an array of records under "items".
+ *
+ * @author rasifix
+ */
+public final class Corpus {
+
+	private static final String[] WORDS = {
+		"alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta",
+		"caf\u00e9", "na\u00efve", "line\nbreak", "tab\there", "quote\"d", "\u00fcber", "\u65e5\u672c"
+	};
+
+	private Corpus() {
+		// static utility
+	}
+
+	/**
+	 * @param size one of small (8 records), medium (800 records) or large (80000 records)
+	 * @param content numbers for records of mostly numbers, strings for
+	 *        records of mostly strings
+	 * @return the document
+	 */
+	public static String generate(String size, String content) {
+		int records;
+		if ("small".equals(size)) {
+			records = 8;
+		} else if ("medium".equals(size)) {
+			records = 800;
+		} else if ("large".equals(size)) {
+			records = 80000;
+		} else {
+			throw new IllegalArgumentException("unknown size " + size);
+		}
+
+		Random random = new Random(42);
+		StringBuilder json = new StringBuilder(records * 128);
+		json.append("{\"items\":[");
+		for (int i = 0; i < records; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			if ("numbers".equals(content)) {
+				numberRecord(json, i, random);
+			} else if ("strings".equals(content)) {
+				stringRecord(json, i, random);
+			} else {
+				throw new IllegalArgumentException("unknown content " + content);
+			}
+		}
+		json.append("]}");
+		return json.toString();
+	}
+
+	private static void numberRecord(StringBuilder json, int id, Random random) {
+		json.append("{\"id\":").append(id);
+		json.append(",\"timestamp\":").append(1300000000000L + random.nextInt(1000000000));
+		json.append(",\"lat\":").append(random.nextDouble() * 180 - 90);
+		json.append(",\"lon\":").append(random.nextDouble() * 360 - 180);
+		json.append(",\"price\":").append(random.nextInt(100000) / 100.0);
+		json.append(",\"active\":").append(random.nextBoolean());
+		json.append(",\"values\":[");
+		for (int i = 0; i < 8; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append(random.nextGaussian());
+		}
+		json.append("]}");
+	}
+
+	private static void stringRecord(StringBuilder json, int id, Random random) {
+		json.append("{\"id\":").append(id);
+		json.append(",\"name\":");
+		string(json, random, 2);
+		json.append(",\"description\":");
+		string(json, random, 12);
+		json.append(",\"parent\":null");
+		json.append(",\"tags\":[");
+		for (int i = 0; i < 4; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			string(json, random, 1);
+		}
+		json.append("]}");
+	}
+
+	private static void string(StringBuilder json, Random random, int words) {
+		json.append('"');
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				json.append(' ');
+			}
+			String word = WORDS[random.nextInt(WORDS.length)];
+			for (int j = 0; j < word.length(); j++) {
+				char c = word.charAt(j);
+				if (c == '"') {
+					json.append("\\\"");
+				} else if (c == '\n') {
+					json.append("\\n");
+				} else if (c == '\t') {
+					json.append("\\t");
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		json.append('"');
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rasifix.saj.JsonReader;
+import com.github.rasifix.saj.SimpleContentHandler;
+import com.github.rasifix.saj.dom.JsonModelBuilder;
+
+/**
+ * Compares the handlers that build an in-memory model of a document.
+ *
+ * @author rasifix
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+
+	@Param({ "small", "medium", "large" })
+	public String size;
+
+	@Param({ "numbers", "strings" })
+	public String content;
+
+	private String json;
+
+	@Setup
+	public void setup() {
+		json = Corpus.generate(size, content);
+	}
+
+	@Benchmark
+	public Object simpleContentHandler() throws IOException {
+		SimpleContentHandler handler = new SimpleContentHandler();
+		new JsonReader(handler).parseJson(json);
+		return handler.getResult();
+	}
+
+	@Benchmark
+	public Object jsonModelBuilder() throws IOException {
+		JsonModelBuilder handler = new JsonModelBuilder();
+		new JsonReader(handler).parseJson(json);
+		return handler.getResult();
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.rasifix.saj.JsonReader;
+
+/**
+ * Measures {@link JsonReader} on the different kinds of input with a handler
+ * that does nothing, and the ANTLR generated parser for comparison.
+ *
+ * @author rasifix
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderBenchmark {
+
+	@Param({ "small", "medium", "large" })
+	public String size;
+
+	@Param({ "numbers", "strings" })
+	public String content;
+
+	private String json;
+
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		json = Corpus.generate(size, content);
+		bytes = json.getBytes("UTF-8");
+	}
+
+	@Benchmark
+	public void parseString(Blackhole blackhole) throws IOException {
+		new JsonReader(new BlackholeHandler(blackhole)).parseJson(json);
+	}
+
+	@Benchmark
+	public void parseReader(Blackhole blackhole) throws IOException {
+		new JsonReader(new BlackholeHandler(blackhole)).parseJson(new StringReader(json));
+	}
+
+	@Benchmark
+	public void parseInputStream(Blackhole blackhole) throws IOException {
+		new JsonReader(new BlackholeHandler(blackhole)).parseJson(new ByteArrayInputStream(bytes));
+	}
+
+	@Benchmark
+	public void parseAntlr(Blackhole blackhole) throws IOException {
+		JsonReader reader = new JsonReader(new BlackholeHandler(blackhole));
+		reader.setUseAntlrParser(true);
+		reader.parseJson(json);
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.rasifix.saj.JsonReader;
+import com.github.rasifix.saj.JsonWriter;
+import com.github.rasifix.saj.dom.JsonModelBuilder;
+import com.github.rasifix.saj.dom.JsonObject;
+
+/**
+ * Measures streaming a model with {@link JsonObject#streamTo}, once to a
+ * handler that does nothing and once serialized by a {@link JsonWriter}.
+ * UTF-8 output is written once directly to a stream and once through an
+ * {@link OutputStreamWriter}.
+ *
+ * @author rasifix
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriterBenchmark {
+
+	@Param({ "small", "medium", "large" })
+	public String size;
+
+	@Param({ "numbers", "strings" })
+	public String content;
+
+	private JsonObject model;
+
+	@Setup
+	public void setup() throws IOException {
+		JsonModelBuilder builder = new JsonModelBuilder();
+		new JsonReader(builder).parseJson(Corpus.generate(size, content));
+		model = (JsonObject) builder.getResult();
+	}
+
+	@Benchmark
+	public void streamTo(Blackhole blackhole) {
+		model.streamTo(new BlackholeHandler(blackhole));
+	}
+
+	@Benchmark
+	public void write(Blackhole blackhole) {
+		JsonWriter writer = new JsonWriter(new BlackholeWriter(blackhole));
+		model.streamTo(writer);
+		writer.close();
+	}
+
+	@Benchmark
+	public void writePrettyPrinted(Blackhole blackhole) {
+		JsonWriter writer = new JsonWriter(new BlackholeWriter(blackhole));
+		writer.setPrettyPrint(true);
+		model.streamTo(writer);
+		writer.close();
+	}
+
+	@Benchmark
+	public void writeUtf8(Blackhole blackhole) {
+		JsonWriter writer = new JsonWriter(new BlackholeOutputStream(blackhole));
+		model.streamTo(writer);
+		writer.close();
+	}
+
+	@Benchmark
+	public void writeUtf8ThroughWriter(Blackhole blackhole) throws IOException {
+		JsonWriter writer = new JsonWriter(new OutputStreamWriter(new BlackholeOutputStream(blackhole), "UTF-8"));
+		model.streamTo(writer);
+		writer.close();
+	}
+
+	private static class BlackholeOutputStream extends OutputStream {
+
+		private final Blackhole blackhole;
+
+		BlackholeOutputStream(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void write(int b) {
+			blackhole.consume(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			blackhole.consume(b);
+			blackhole.consume(len);
+		}
+
+	}
+
+	private static class BlackholeWriter extends Writer {
+
+		private final Blackhole blackhole;
+
+		BlackholeWriter(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			blackhole.consume(cbuf);
+			blackhole.consume(len);
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			blackhole.consume(str);
+			blackhole.consume(len);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
@@ -45,6 +45,10 @@ package com.github.rasifix.saj.internal;
 @members {
 protected JsonContentHandler handler;
 
+protected boolean useBigDecimal;
+
+protected SymbolTable symbols;
+
 public void setContentHandler(JsonContentHandler handler) {
 	if (handler == null) {
 		throw new IllegalArgumentException("handler cannot be null");
@@ -52,8 +56,21 @@ public void setContentHandler(JsonContentHandler handler) {
 	this.handler = handler;
 }
 
+public void setUseBigDecimal(boolean useBigDecimal) {
+	this.useBigDecimal = useBigDecimal;
+}
+
+public void setSymbolTable(SymbolTable symbols) {
+	this.symbols = symbols;
+}
+
+private String memberName(String quotedString) {
+	String name = unquote(quotedString);
+	return symbols != null ? symbols.lookup(name) : name;
+}
+
 private static String unquote(String quotedString) {
-	return quotedString.substring(1, quotedString.length() - 1);
+	return StringDecoder.unescape(quotedString.substring(1, quotedString.length() - 1));
 }
 
 protected void mismatch(IntStream input, int ttype, BitSet follow) throws RecognitionException {
@@ -132,7 +149,7 @@ members
 	;
 
 pair 
-	:	m=STRING ':' { handler.startMember(unquote($m.text)); }
+	:	m=STRING ':' { handler.startMember(memberName($m.text)); }
 	    value
 	    { handler.endMember(); }
 	;
@@ -162,8 +179,8 @@ value
 number
 	: n=NUMBER 
 	  { 
-	  	String number = $n.getText();
-  		handler.value(Double.parseDouble($n.getText())); 
+	  	char[] number = $n.getText().toCharArray();
+  		NumberParser.parse(number, 0, number.length, useBigDecimal, handler);
 	  }	
 	;
 
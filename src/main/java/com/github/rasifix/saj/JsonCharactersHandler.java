@@ -0,0 +1,52 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj;
+
+/**
+ * Optional extension of {@link JsonContentHandler} that receives strings and
+ * member names as ranges of a char array instead of String objects. If the
+ * handler passed to a {@link JsonReader} implements this interface, the reader
+ * invokes the methods of this interface instead of {@link #startMember(String)}
+ * and {@link #value(String)}. Handlers that discard most of the values thus
+ * only create Strings for the values they keep.
+ * <p>
+ * As with the characters callback in SAX, the array is a buffer of the reader.
+ * Its content is only valid during the invocation and must not be modified.
+ *
+ * @author rasifix
+ */
+public interface JsonCharactersHandler extends JsonContentHandler {
+
+	/**
+	 * Invoked directly inside of a JSON object to mark the start of
+	 * member, see {@link #startMember(String)}.
+	 *
+	 * @param ch the buffer containing the name
+	 * @param start the start of the name in the buffer
+	 * @param length the length of the name
+	 */
+	void startMember(char[] ch, int start, int length);
+
+	/**
+	 * Invoked for a string value, see {@link #value(String)}.
+	 *
+	 * @param ch the buffer containing the value
+	 * @param start the start of the value in the buffer
+	 * @param length the length of the value
+	 */
+	void value(char[] ch, int start, int length);
+
+}
@@ -15,6 +15,7 @@
  */
 package com.github.rasifix.saj;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
 
@@ -73,8 +74,30 @@ public interface JsonContentHandler {
 	
 	void value(double value);
 	
+	/**
+	 * Invoked for integral numbers within the range of an int.
+	 * 
+	 * @param value the number
+	 */
 	void value(int value);
 	
+	/**
+	 * Invoked for integral numbers that exceed the range of an int but
+	 * are within the range of a long.
+	 * 
+	 * @param value the number
+	 */
+	void value(long value);
+	
+	/**
+	 * Invoked for integral numbers that exceed the range of a long. If the
+	 * reader is configured to do so, also invoked for all non-integral
+	 * numbers instead of {@link #value(double)}.
+	 * 
+	 * @param value the number
+	 */
+	void value(BigDecimal value);
+	
 	void value(boolean value);
 	
 	void nullValue();
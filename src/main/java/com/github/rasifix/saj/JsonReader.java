@@ -15,28 +15,58 @@
  */
 package com.github.rasifix.saj;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.io.StringReader;
+import java.nio.channels.FileChannel;
 
 import org.antlr.runtime.ANTLRReaderStream;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
 
+import com.github.rasifix.saj.internal.CharParser;
 import com.github.rasifix.saj.internal.JSONLexer;
 import com.github.rasifix.saj.internal.JSONParser;
+import com.github.rasifix.saj.internal.MappedInputStream;
+import com.github.rasifix.saj.internal.PathFilter;
+import com.github.rasifix.saj.internal.SymbolTable;
+import com.github.rasifix.saj.internal.Utf8Parser;
 
 /**
- * 
+ * Reads JSON and reports its content to a {@link JsonContentHandler}. By default,
+ * a hand-written tokenizer is used that dispatches the callbacks directly from
+ * a char buffer. Handlers implementing {@link JsonCharactersHandler} receive
+ * strings as ranges of that buffer instead of String objects. The ANTLR
+ * generated parser is still available through {@link #setUseAntlrParser(boolean)},
+ * it always reports Strings.
  * 
  * @author rasifix
  */
 public class JsonReader {
 	
 	private final JsonContentHandler handler;
+	
+	private CharParser charParser;
+	
+	private Utf8Parser utf8Parser;
+	
+	private boolean useAntlrParser;
+	
+	private int bufferSize = CharParser.DEFAULT_BUFFER_SIZE;
+	
+	private boolean useBigDecimal;
+	
+	private SymbolTable symbols = new SymbolTable();
+	
+	private PathFilter filter;
+	
+	private boolean records;
 
 	public JsonReader(JsonContentHandler handler) {
 		if (handler == null) {
@@ -45,6 +75,151 @@ public class JsonReader {
 		this.handler = handler;
 	}
 	
+	/**
+	 * Determines whether the ANTLR generated parser is used instead of the
+	 * hand-written tokenizer. The ANTLR parser reads the whole input into
+	 * memory and creates a token object per token.
+	 * 
+	 * @param useAntlrParser true to use the ANTLR generated parser
+	 */
+	public void setUseAntlrParser(boolean useAntlrParser) {
+		this.useAntlrParser = useAntlrParser;
+	}
+	
+	/**
+	 * Sets the size of the window through which the input is read (in chars,
+	 * or in bytes for UTF-8 encoded streams).
+	 * The reader only keeps this window in memory and not the whole document,
+	 * so arbitrarily large documents can be parsed. The window is enlarged
+	 * temporarily if a single string or number does not fit into it.
+	 * 
+	 * @param bufferSize the size of the window, defaults to 64k
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+		if (charParser != null) {
+			charParser.setBufferSize(bufferSize);
+		}
+		if (utf8Parser != null) {
+			utf8Parser.setBufferSize(bufferSize);
+		}
+	}
+	
+	/**
+	 * Determines how non-integral numbers are reported. By default they are
+	 * converted to double and passed to {@link JsonContentHandler#value(double)}.
+	 * If set, they are passed exactly to {@link JsonContentHandler#value(java.math.BigDecimal)}.
+	 * Integral numbers are always reported as int, long or BigDecimal depending
+	 * on their magnitude.
+	 * 
+	 * @param useBigDecimal true to report non-integral numbers as BigDecimal
+	 */
+	public void setUseBigDecimal(boolean useBigDecimal) {
+		this.useBigDecimal = useBigDecimal;
+		if (charParser != null) {
+			charParser.setUseBigDecimal(useBigDecimal);
+		}
+		if (utf8Parser != null) {
+			utf8Parser.setUseBigDecimal(useBigDecimal);
+		}
+	}
+	
+	/**
+	 * Determines whether member names are interned. If set, which is the
+	 * default, the reader keeps a bounded table of the member names it has
+	 * seen and passes the same String instance to
+	 * {@link JsonContentHandler#startMember(String)} for equal names, also
+	 * across documents. This avoids allocating a String per member of
+	 * documents that repeat the same keys and lets models built from them
+	 * share their keys.
+	 * 
+	 * @param internMemberNames false to create a new String for every member name
+	 */
+	public void setInternMemberNames(boolean internMemberNames) {
+		this.symbols = internMemberNames ? new SymbolTable() : null;
+		if (charParser != null) {
+			charParser.setSymbolTable(symbols);
+		}
+		if (utf8Parser != null) {
+			utf8Parser.setSymbolTable(symbols);
+		}
+	}
+	
+	/**
+	 * Restricts the events reported to the handler to the given paths. Paths
+	 * use a subset of the JSONPath syntax: <code>$</code> is the root value,
+	 * <code>.name</code> or <code>['name']</code> selects a member,
+	 * <code>[0]</code> an element and <code>*</code> all members or elements,
+	 * e.g. <code>$.header.type</code> or <code>$.items[*].id</code>.
+	 * <p>
+	 * The handler receives the events of the selected values and of the
+	 * objects and arrays leading to them, i.e. a document from which all
+	 * other members and elements have been removed. Objects and arrays that
+	 * contain no selected path are skipped by counting brackets, without
+	 * tokenizing or validating their content. Filtering is not supported by
+	 * the ANTLR parser.
+	 * 
+	 * @param includePaths the paths to include, none to include everything
+	 * @throws IllegalArgumentException if the paths or a path are null or a
+	 *         path is not valid
+	 */
+	public void setIncludePaths(String... includePaths) {
+		if (includePaths == null) {
+			throw new IllegalArgumentException("include paths cannot be null");
+		}
+		this.filter = includePaths.length > 0 ? new PathFilter(includePaths) : null;
+		if (charParser != null) {
+			charParser.setFilter(filter);
+		}
+		if (utf8Parser != null) {
+			utf8Parser.setFilter(filter);
+		}
+	}
+	
+	/**
+	 * Selects whether the input is a sequence of records instead of a single
+	 * value, e.g. newline-delimited JSON (JSON Lines). The values of the
+	 * records are reported one after the other, a handler implementing
+	 * {@link JsonRecordHandler} is also notified of their boundaries. An
+	 * empty input contains no records. The same reader and its buffers are
+	 * used for all records. Records are not supported by the ANTLR parser.
+	 * <p>
+	 * See {@link ParallelRecordReader} to process records on several threads.
+	 * 
+	 * @param records true to read a sequence of records
+	 */
+	public void setRecords(boolean records) {
+		this.records = records;
+		if (charParser != null) {
+			charParser.setRecords(records);
+		}
+		if (utf8Parser != null) {
+			utf8Parser.setRecords(records);
+		}
+	}
+	
+	/**
+	 * Stops parsing the current document. Intended to be invoked by the
+	 * handler from within a callback once it has seen what it needs: no
+	 * further callbacks are made and the <code>parseJson</code> method
+	 * returns normally without reading the rest of the input. Input streams
+	 * and readers are left positioned somewhere after the last reported
+	 * value. Stopping is not supported by the ANTLR parser.
+	 * 
+	 * @throws IllegalStateException if the ANTLR parser is used
+	 */
+	public void stop() {
+		if (useAntlrParser) {
+			throw new IllegalStateException("stopping is not supported by the ANTLR parser");
+		}
+		if (charParser != null) {
+			charParser.stop();
+		}
+		if (utf8Parser != null) {
+			utf8Parser.stop();
+		}
+	}
+	
 	/**
 	 * Parse a String containing JSON.
 	 * 
@@ -52,21 +227,65 @@ public class JsonReader {
 	 * @throws IOException if reading fails
 	 */
 	public void parseJson(String json) throws IOException {
-		parseJson(new StringReader(json));
+		if (useAntlrParser) {
+			parseJson(new StringReader(json));
+		} else {
+			getCharParser().parse(json);
+		}
 	}
 	
 	/**
 	 * Parse JSON from the given {@link InputStream}. The encoding
-	 * is detected according to RFC4627 section 3.
+	 * is detected according to RFC4627 section 3. UTF-8 encoded input
+	 * is parsed directly on the bytes, only string contents are decoded.
 	 * 
 	 * @param inputStream the input stream from which to read
 	 * @throws IOException if reading fails
 	 */
 	public void parseJson(InputStream inputStream) throws IOException {
-		final BufferedInputStream stream = new BufferedInputStream(inputStream);
-		final String encoding = detectEncoding(stream);
-		final Reader reader = new InputStreamReader(stream, encoding);
-		parseJson(reader);
+		final byte[] head = new byte[4];
+		final int length = readHead(inputStream, head);
+		final String encoding = detectEncoding(head, length);
+		if (!useAntlrParser && "UTF-8".equals(encoding)) {
+			getUtf8Parser().parse(inputStream, head, length);
+		} else {
+			final InputStream stream = new SequenceInputStream(new ByteArrayInputStream(head, 0, length), inputStream);
+			parseJson(new InputStreamReader(stream, encoding));
+		}
+	}
+	
+	/**
+	 * Parse JSON from the given file. The file is memory mapped, see
+	 * {@link #parseJson(FileChannel)}.
+	 * 
+	 * @param file the file from which to read
+	 * @throws IOException if reading fails
+	 */
+	public void parseJson(File file) throws IOException {
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			parseJson(in.getChannel());
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Parse JSON from the given channel, starting at its current position.
+	 * The file is memory mapped in chunks and the bytes are read straight
+	 * out of the mapping. The position of the channel is not modified and
+	 * the channel is not closed.
+	 * 
+	 * @param channel the channel from which to read
+	 * @throws IOException if reading fails
+	 */
+	public void parseJson(FileChannel channel) throws IOException {
+		final MappedInputStream in = new MappedInputStream(channel);
+		try {
+			parseJson(in);
+		} finally {
+			in.close();
+		}
 	}
 	
 	/**
@@ -77,45 +296,89 @@ public class JsonReader {
 	 * @throws IOException if reading from the Reader fails
 	 */
 	public void parseJson(Reader reader) throws IOException {
+		if (useAntlrParser) {
+			parseWithAntlr(reader);
+		} else {
+			getCharParser().parse(reader);
+		}
+	}
+	
+	private CharParser getCharParser() {
+		if (charParser == null) {
+			charParser = new CharParser(handler);
+			charParser.setBufferSize(bufferSize);
+			charParser.setUseBigDecimal(useBigDecimal);
+			charParser.setSymbolTable(symbols);
+			charParser.setFilter(filter);
+			charParser.setRecords(records);
+		}
+		return charParser;
+	}
+	
+	private Utf8Parser getUtf8Parser() {
+		if (utf8Parser == null) {
+			utf8Parser = new Utf8Parser(handler);
+			utf8Parser.setBufferSize(bufferSize);
+			utf8Parser.setUseBigDecimal(useBigDecimal);
+			utf8Parser.setSymbolTable(symbols);
+			utf8Parser.setFilter(filter);
+			utf8Parser.setRecords(records);
+		}
+		return utf8Parser;
+	}
+	
+	private void parseWithAntlr(Reader reader) throws IOException {
+		if (filter != null) {
+			throw new IllegalStateException("include paths are not supported by the ANTLR parser");
+		}
+		if (records) {
+			throw new IllegalStateException("records are not supported by the ANTLR parser");
+		}
         JSONLexer lexer = new JSONLexer(new ANTLRReaderStream(reader));
         CommonTokenStream tokens = new CommonTokenStream(lexer);
 
         JSONParser g = new JSONParser(tokens);
         g.setContentHandler(handler);
+        g.setUseBigDecimal(useBigDecimal);
+        g.setSymbolTable(symbols);
         
         try {
             g.json();
         } catch (RecognitionException e) {
-            throw new RuntimeException(e);
+            throw new JsonParseException(e);
         }
 	}
 
-	private String detectEncoding(InputStream stream) throws IOException {
-		stream.mark(4);
-
-		byte[] buf = new byte[4];
-		int len = stream.read(buf);
+	private static int readHead(InputStream stream, byte[] head) throws IOException {
+		int length = 0;
+		while (length < head.length) {
+			int read = stream.read(head, length, head.length - length);
+			if (read == -1) {
+				break;
+			}
+			length += read;
+		}
+		return length;
+	}
 
+	private static String detectEncoding(byte[] buf, int len) {
 		// xx xx xx xx UTF-8
 		String encoding = "UTF-8";
 		if (len == 4) {
 			if (buf[0] == 0 && buf[1] == 0 && buf[2] == 0) {
 				// 00 00 00 xx UTF-32BE
 				encoding = "UTF-32BE";
-			} else if (buf[0] == 0 && buf[1] == 0 && buf[2] == 0) {
+			} else if (buf[0] == 0 && buf[2] == 0) {
 				// 00 xx 00 xx UTF-16BE
 				encoding = "UTF-16BE";
 			} else if (buf[1] == 0 && buf[2] == 0 && buf[3] == 0) {
 				// xx 00 00 00 UTF-32LE
 				encoding = "UTF-32LE";
-			} else if (buf[1] == 0 && buf[1] == 0 && buf[3] == 0) {
+			} else if (buf[1] == 0 && buf[3] == 0) {
 				// xx 00 xx 00 UTF-16LE
 				encoding = "UTF-16LE";
 			}
 		}
-
-		stream.reset();
-
 		return encoding;
 	}
 
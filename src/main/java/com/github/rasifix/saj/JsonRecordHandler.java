@@ -0,0 +1,38 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj;
+
+/**
+ * Optional extension of {@link JsonContentHandler} that is notified of the
+ * boundaries of the records when a sequence of values is read, e.g.
+ * newline-delimited JSON (see {@link JsonReader#setRecords(boolean)}).
+ * Other handlers receive the values of the records one after the other.
+ *
+ * @author rasifix
+ */
+public interface JsonRecordHandler extends JsonContentHandler {
+
+	/**
+	 * Invoked before the value of a record.
+	 */
+	void startRecord();
+
+	/**
+	 * Invoked after the value of a record.
+	 */
+	void endRecord();
+
+}
@@ -15,76 +15,263 @@
  */
 package com.github.rasifix.saj;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.io.Writer;
-import java.util.LinkedList;
+import java.math.BigDecimal;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.github.rasifix.saj.internal.CharOutput;
+import com.github.rasifix.saj.internal.JsonOutput;
+import com.github.rasifix.saj.internal.Utf8Output;
 
 /**
  * JsonWriter writes JSON to a given {@link Writer}. It is a {@link JsonContentHandler}
  * thus allowing streaming of JSON through a pipeline as is known from SAX.
+ * Given an {@link OutputStream} or a {@link WritableByteChannel}, the JSON is
+ * encoded as UTF-8 directly into a byte buffer, without an intermediate
+ * {@link Writer}. Output is buffered until the writer is flushed or closed.
  * 
  * @author rasifix
  */
 public class JsonWriter implements JsonContentHandler {
 	
-	private static final String COLON = ":";
-
-	private static final String QUOTE = "\"";
+	private static final char COLON = ':';
 	
-	private static final String COMMA = ",";
+	private static final char COMMA = ',';
 	
-	private static final String NL = "\n";
+	private static final char NL = '\n';
 	
-	private static final String ARR_START = "[";
+	private static final char ARR_START = '[';
 	
-	private static final String ARR_END = "]";
+	private static final char ARR_END = ']';
 	
-	private static final String OBJ_START = "{";
+	private static final char OBJ_START = '{';
 	
-	private static final String OBJ_END = "}";
+	private static final char OBJ_END = '}';
 	
-	private static final String INDENT = "\t";
+	private static final char INDENT = '\t';
 	
-	private final BufferedWriter writer;
+	private static final byte INITIAL = 0;
 	
-	private final LinkedList<Element> elementStack = new LinkedList<Element>();
-
-	private Element current;
+	private static final byte OBJECT = 1;
+	
+	private static final byte ARRAY = 2;
+	
+	private static final byte MEMBER = 3;
+	
+	private JsonOutput out;
+	
+	/**
+	 * The state of every open element, the initial state at the bottom.
+	 */
+	private byte[] states = new byte[16];
+	
+	/**
+	 * The number of members or items written so far for every open element.
+	 */
+	private int[] counts = new int[16];
 	
-	private StringBuilder indent = new StringBuilder();
+	private int depth;
+	
+	/**
+	 * A newline followed by tabs, of which the newline and the first
+	 * <code>level</code> tabs are written to indent a line.
+	 */
+	private char[] indentation = new char[17];
+	
+	private int level;
 
 	private boolean prettyPrint;
 	
+	private int decimalPlaces = -1;
+	
 	public JsonWriter(Writer writer) {
-		if (writer == null) {
-			throw new IllegalArgumentException("writer cannot be null");
+		this(new CharOutput(writer, JsonOutput.DEFAULT_BUFFER_SIZE));
+	}
+	
+	/**
+	 * @param out the stream to which UTF-8 encoded JSON is written
+	 */
+	public JsonWriter(OutputStream out) {
+		this(new Utf8Output(out, JsonOutput.DEFAULT_BUFFER_SIZE));
+	}
+	
+	/**
+	 * @param channel the channel to which UTF-8 encoded JSON is written
+	 */
+	public JsonWriter(WritableByteChannel channel) {
+		this(new Utf8Output(channel, JsonOutput.DEFAULT_BUFFER_SIZE));
+	}
+	
+	private JsonWriter(JsonOutput out) {
+		this.out = out;
+		this.states[0] = INITIAL;
+		Arrays.fill(indentation, INDENT);
+		indentation[0] = NL;
+	}
+	
+	/**
+	 * @return true if every object and array that was started has been ended
+	 */
+	public boolean isComplete() {
+		return depth == 0;
+	}
+	
+	/**
+	 * Prepares the writer for the next document, written to the given writer.
+	 * Buffers and settings are kept, so that writers can be reused, e.g.
+	 * through a {@link JsonWriterPool}. Nothing is written to the previous
+	 * target, so the previous document must have been flushed or closed.
+	 * 
+	 * @param writer the writer to which the next document is written
+	 * @throws IllegalStateException if the previous document is incomplete
+	 *         or was not flushed
+	 */
+	public void reset(Writer writer) {
+		checkReusable();
+		if (out instanceof CharOutput) {
+			((CharOutput) out).setWriter(writer);
+		} else {
+			out = new CharOutput(writer, JsonOutput.DEFAULT_BUFFER_SIZE);
+		}
+	}
+	
+	/**
+	 * Prepares the writer for the next document, written UTF-8 encoded to
+	 * the given stream, see {@link #reset(Writer)}.
+	 * 
+	 * @param out the stream to which the next document is written
+	 * @throws IllegalStateException if the previous document is incomplete
+	 *         or was not flushed
+	 */
+	public void reset(OutputStream out) {
+		checkReusable();
+		if (this.out instanceof Utf8Output) {
+			((Utf8Output) this.out).setOutputStream(out);
+		} else {
+			this.out = new Utf8Output(out, JsonOutput.DEFAULT_BUFFER_SIZE);
+		}
+	}
+	
+	/**
+	 * Prepares the writer for the next document, written UTF-8 encoded to
+	 * the given channel, see {@link #reset(Writer)}.
+	 * 
+	 * @param channel the channel to which the next document is written
+	 * @throws IllegalStateException if the previous document is incomplete
+	 *         or was not flushed
+	 */
+	public void reset(WritableByteChannel channel) {
+		checkReusable();
+		if (out instanceof Utf8Output) {
+			((Utf8Output) out).setChannel(channel);
+		} else {
+			out = new Utf8Output(channel, JsonOutput.DEFAULT_BUFFER_SIZE);
+		}
+	}
+	
+	private void checkReusable() {
+		if (!isComplete()) {
+			throw new IllegalStateException("previous document is incomplete");
+		}
+		if (out.isBuffered()) {
+			throw new IllegalStateException("previous document was not flushed");
+		}
+	}
+	
+	/**
+	 * Writes the buffered output to the current target without flushing the
+	 * target.
+	 */
+	void drain() {
+		try {
+			out.drain();
+		} catch (IOException e) {
+			throw new RuntimeIOException(e);
 		}
-		
-		this.writer = new BufferedWriter(writer, 1024);
-		this.current = new InitialElement();
-		this.elementStack.push(current);
 	}
 	
 	public void setPrettyPrint(boolean prettyPrint) {
 		this.prettyPrint = prettyPrint;
 	}
 	
-	private void pushElement(Element element) {
-		current.notifyChild();
-		elementStack.push(element);
-		current = element;
+	/**
+	 * Determines how doubles are written. By default, the shortest decimal
+	 * that reads back as the same double is written, in the format of
+	 * {@link Double#toString(double)}. With a fixed number of decimal places,
+	 * doubles are rounded half-even and written in plain notation, e.g.
+	 * <code>1234.50</code> for two decimal places.
+	 * 
+	 * @param decimalPlaces the number of decimal places, at most 17, or -1
+	 *        for the shortest representation
+	 */
+	public void setDecimalPlaces(int decimalPlaces) {
+		if (decimalPlaces < -1 || decimalPlaces > JsonOutput.MAX_DECIMAL_PLACES) {
+			throw new IllegalArgumentException("decimal places must be between -1 and " + JsonOutput.MAX_DECIMAL_PLACES);
+		}
+		this.decimalPlaces = decimalPlaces;
+	}
+	
+	private void push(byte state) {
+		if (++depth == states.length) {
+			states = Arrays.copyOf(states, 2 * depth);
+			counts = Arrays.copyOf(counts, 2 * depth);
+		}
+		states[depth] = state;
+		counts[depth] = 0;
+	}
+	
+	/**
+	 * Writes the comma and the indentation in front of a value, an object
+	 * or an array.
+	 * 
+	 * @param kind what is written, for the error message
+	 */
+	private void separate(String kind) throws IOException {
+		switch (states[depth]) {
+		case OBJECT:
+			throw new IllegalStateException(kind + " not supported in current state (object)");
+		case ARRAY:
+			if (counts[depth]++ > 0) out.writeAscii(COMMA);
+			writeIndent();
+			break;
+		default:
+			// a member value or a top-level value, nothing to separate
+		}
+	}
+	
+	/**
+	 * Writes the comma and the indentation in front of a member name.
+	 */
+	private void separateMember() throws IOException {
+		switch (states[depth]) {
+		case OBJECT:
+			if (counts[depth]++ > 0) out.writeAscii(COMMA);
+			writeIndent();
+			break;
+		case ARRAY:
+			throw new IllegalStateException("illegal nesting - startMember() in array");
+		default:
+			throw new IllegalStateException("illegal nesting - startMember() outside of object");
+		}
 	}
 	
-	private void popElement() {
-		elementStack.pop();
-		current = elementStack.peek();
+	private void writeIndent() throws IOException {
+		if (prettyPrint) {
+			out.writeAscii(indentation, 0, level + 1);
+		}
 	}
 	
 	public void startObject()  {
 		try {
-			current.startObject();
-			pushElement(new ObjectElement());
+			separate("object");
+			out.writeAscii(OBJ_START);
+			indent();
+			push(OBJECT);
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
@@ -122,21 +309,79 @@ public class JsonWriter implements JsonContentHandler {
 	
 	public void startMember(String name) {
 		try {
-			current.member(name);
-			pushElement(new MemberElement());
+			separateMember();
+			out.writeString(name);
+			out.writeAscii(COLON);
+			push(MEMBER);
+		} catch (IOException e) {
+			throw new RuntimeIOException(e);
+		}
+	}
+	
+	public void member(Name name, int value) {
+		startMember(name);
+		value(value);
+		endMember();
+	}
+	
+	public void member(Name name, long value) {
+		startMember(name);
+		value(value);
+		endMember();
+	}
+	
+	public void member(Name name, double value) {
+		startMember(name);
+		value(value);
+		endMember();
+	}
+	
+	public void member(Name name, String value) {
+		startMember(name);
+		value(value);
+		endMember();
+	}
+	
+	public void member(Name name, boolean value) {
+		startMember(name);
+		value(value);
+		endMember();
+	}
+	
+	/**
+	 * Starts a member whose name was escaped and encoded in advance. The
+	 * output is the same as for {@link #startMember(String)}.
+	 * 
+	 * @param name the pre-encoded name
+	 */
+	public void startMember(Name name) {
+		try {
+			separateMember();
+			out.writeEncoded(name.chars, name.utf8);
+			push(MEMBER);
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
 	}
 	
 	public void endMember() {
-		popElement();
+		if (states[depth] != MEMBER) {
+			throw new IllegalStateException("illegal nesting - endMember() outside of member");
+		}
+		depth--;
 	}
 	
 	public void endObject() {
+		if (states[depth] == ARRAY) {
+			throw new IllegalStateException("illegal nesting - endObject() in array");
+		} else if (states[depth] != OBJECT) {
+			throw new IllegalStateException("illegal nesting - endObject() outside of object");
+		}
 		try {
-			current.endObject();
-			popElement();
+			outdent();
+			writeIndent();
+			out.writeAscii(OBJ_END);
+			depth--;
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
@@ -144,17 +389,26 @@ public class JsonWriter implements JsonContentHandler {
 	
 	public void startArray() {
 		try {
-			current.startArray();
-			pushElement(new ArrayElement());
+			separate("array");
+			out.writeAscii(ARR_START);
+			indent();
+			push(ARRAY);
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
 	}
 	
 	public void endArray() {
+		if (states[depth] == OBJECT) {
+			throw new IllegalStateException("array not supported in current state (object)");
+		} else if (states[depth] != ARRAY) {
+			throw new IllegalStateException("illegal nesting - endArray() outside of array");
+		}
 		try {
-			current.endArray();
-			popElement();
+			outdent();
+			writeIndent();
+			out.writeAscii(ARR_END);
+			depth--;
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
@@ -162,7 +416,8 @@ public class JsonWriter implements JsonContentHandler {
 	
 	public void nullValue() {
 		try {
-			current.nullValue();
+			separate("value");
+			out.writeAscii("null");
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
@@ -170,7 +425,8 @@ public class JsonWriter implements JsonContentHandler {
 	
 	public void value(int value) {
 		try {
-			current.value(value);
+			separate("value");
+			out.writeInt(value);
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
@@ -178,7 +434,8 @@ public class JsonWriter implements JsonContentHandler {
 	
 	public void value(long value) {
 		try {
-			current.value(value);
+			separate("value");
+			out.writeLong(value);
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
@@ -186,350 +443,111 @@ public class JsonWriter implements JsonContentHandler {
 	
 	public void value(double value) {
 		try {
-			current.value(value);
+			separate("value");
+			if (decimalPlaces < 0) {
+				out.writeDouble(value);
+			} else {
+				out.writeDouble(value, decimalPlaces);
+			}
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
 	}
 	
-	public void value(String value) {
+	public void value(BigDecimal value) {
 		try {
-			current.value(value);
+			separate("value");
+			out.writeAscii(value.toString());
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
 	}
 	
-	public void value(boolean value) {
+	public void value(String value) {
 		try {
-			current.value(value);
+			separate("value");
+			out.writeString(value);
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
 	}
 	
-    private static String escape(String string) {
-        char         b;
-        char         c = 0;
-        int          i;
-        int          len = string.length();
-        StringBuffer sb = new StringBuffer(len + 4);
-        String       t;
-
-        for (i = 0; i < len; i += 1) {
-            b = c;
-            c = string.charAt(i);
-            switch (c) {
-            case '\\':
-            case '"':
-                sb.append('\\');
-                sb.append(c);
-                break;
-            case '/':
-                if (b == '<') {
-                    sb.append('\\');
-                }
-                sb.append(c);
-                break;
-            case '\b':
-                sb.append("\\b");
-                break;
-            case '\t':
-                sb.append("\\t");
-                break;
-            case '\n':
-                sb.append("\\n");
-                break;
-            case '\f':
-                sb.append("\\f");
-                break;
-            case '\r':
-                sb.append("\\r");
-                break;
-            default:
-                if (c < ' ' || (c >= '\u0080' && c < '\u00a0') ||
-                               (c >= '\u2000' && c < '\u2100')) {
-                    t = "000" + Integer.toHexString(c);
-                    sb.append("\\u" + t.substring(t.length() - 4));
-                } else {
-                    sb.append(c);
-                }
-            }
-        }
-        
-        return sb.toString();
-    }
-
-	public void close() {
+	public void value(boolean value) {
 		try {
-			writer.close();
+			separate("value");
+			out.writeAscii(value ? "true" : "false");
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 		}
 	}
 	
-	protected void indent() {
-		indent.append(INDENT);
-	}
-	
-	protected void outdent() {
-		indent.setLength(indent.length() - INDENT.length());
+	/**
+	 * Writes the buffered output to the target and flushes the target.
+	 */
+	public void flush() {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeIOException(e);
+		}
 	}
 	
-	private abstract class Element {
-		
-		protected abstract boolean needsComma();
-
-		protected void notifyChild() {
-			// ignored
-		}
-		
-		private void writePendingComma() throws IOException {
-			if (needsComma()) writer.write(COMMA);
-		}
-
-		protected void writeIndent() throws IOException {
-			if (prettyPrint) {
-				writer.write(NL);
-				writer.write(indent.toString());
-			}
-		}
-
-		protected void member(String name) throws IOException {
-			writePendingComma();
-			writeIndent();
-			
-			writer.write(QUOTE);
-			writer.write(name);
-			writer.write(QUOTE);
-			writer.write(COLON);
-		}
-		
-		protected void nullValue() throws IOException {
-			writePendingComma();
-			writeIndent();
-			
-			writer.write("null");
-			notifyChild();
-		}
-		
-		protected void value(int value) throws IOException {
-			writePendingComma();
-			writeIndent();
-			
-			writer.write(Integer.toString(value));
-			notifyChild();
-		}
-		
-		protected void value(long value) throws IOException {
-			writePendingComma();
-			writeIndent();
-			
-			writer.write(Long.toString(value));
-			notifyChild();
-		}
-		
-		protected void value(double value) throws IOException {
-			writePendingComma();
-			writeIndent();
-			
-			writer.write(Double.toString(value));
-			notifyChild();
-		}
-		
-		protected void value(boolean value) throws IOException {
-			writePendingComma();
-			writeIndent();
-			
-			writer.write(Boolean.toString(value));
-			notifyChild();
-		}
-		
-		protected void value(String value) throws IOException {
-			writePendingComma();
-			writeIndent();
-			
-			writer.write(QUOTE);
-			writer.write(escape(value));
-			writer.write(QUOTE);
-			notifyChild();
-		}
-		
-		protected void startObject() throws IOException {
-			writePendingComma();
-			writeIndent();
-			
-			writer.write(OBJ_START);
-			indent();
-		}
-		
-		protected void endObject() throws IOException {
-			outdent();
-			writeIndent();
-			writer.write(OBJ_END);
-		}
-		
-		protected void startArray() throws IOException {
-			writePendingComma();
-			writeIndent();
-			
-			writer.write(ARR_START);
-			indent();
-		}
-		
-		protected void endArray() throws IOException {
-			outdent();
-			writeIndent();
-			writer.write(ARR_END);
+	public void close() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeIOException(e);
 		}
-		
 	}
 	
-	private class ObjectElement extends Element {
-		
-		private int members;
-
-		protected boolean needsComma() {
-			return members > 0;
-		}
-		
-		@Override
-		protected void startObject() throws IOException {
-			throw new IllegalStateException("object not supported in current state (object)");
-		}
-		
-		@Override
-		protected void startArray() throws IOException {
-			throw new IllegalStateException("array not supported in current state (object)");
-		}
-		
-		@Override
-		protected void endArray() throws IOException {
-			throw new IllegalStateException("array not supported in current state (object)");
-		}
-
-		@Override
-		protected void value(boolean value) throws IOException {
-			throw new IllegalStateException("value not supported in current state (object)");
-		}
-		
-		@Override
-		protected void value(double value) throws IOException {
-			throw new IllegalStateException("value not supported in current state (object)");
-		}
-		
-		@Override
-		protected void value(int value) throws IOException {
-			throw new IllegalStateException("value not supported in current state (object)");
-		}
-		
-		@Override
-		protected void value(String value) throws IOException {
-			throw new IllegalStateException("value not supported in current state (object)");
-		}
-		
-		@Override
-		protected void notifyChild() {
-			members += 1;
-		}
-		
-		@Override
-		public String toString() {
-			return "object";
+	protected void indent() {
+		if (++level == indentation.length) {
+			indentation = Arrays.copyOf(indentation, 2 * level);
+			Arrays.fill(indentation, level, indentation.length, INDENT);
 		}
-		
 	}
 	
-	private class ArrayElement extends Element {
-		
-		private int items;
-
-		protected boolean needsComma() {
-			return items > 0;
-		}
-		
-		@Override
-		protected void notifyChild() {
-			items += 1;
-		}
-		
-		@Override
-		protected void endObject() throws IOException {
-			throw new IllegalStateException("illegal nesting - endObject() in array");
-		}
-		
-		@Override
-		protected void member(String name) throws IOException {
-			throw new IllegalStateException("illegal nesting - startMember() in array");
-		}
-		
-		@Override
-		public String toString() {
-			return "array";
-		}
-		
+	protected void outdent() {
+		level--;
 	}
 	
-	private class MemberElement extends Element {
-
-		protected boolean needsComma() {
-			return false;
-		}
+	/**
+	 * A member name that is escaped and encoded once, together with the
+	 * quotes and the colon, so that writing it is a single copy. Names are
+	 * immutable and can be shared by writers, e.g. as constants of the
+	 * fields of records written many times.
+	 */
+	public static final class Name {
 		
-		@Override
-		public String toString() {
-			return "member";
-		}
-
-		@Override
-		protected void startArray() throws IOException {
-			writer.write(ARR_START);
-			indent();
-		}
+		private static final Charset UTF8 = Charset.forName("UTF-8");
 		
-		@Override
-		protected void startObject() throws IOException {
-			writer.write(OBJ_START);
-			indent();
-		}
-
-		protected void value(int value) throws IOException {
-			writer.write(Integer.toString(value));
-			notifyChild();
-		}
-		
-		protected void value(double value) throws IOException {
-			writer.write(Double.toString(value));
-			notifyChild();
-		}
-		
-		protected void value(boolean value) throws IOException {
-			writer.write(Boolean.toString(value));
-			notifyChild();
-		}
+		private final String name;
 		
-		protected void value(String value) throws IOException {
-			writer.write(QUOTE);
-			writer.write(escape(value));
-			writer.write(QUOTE);
-			notifyChild();
-		}
+		private final char[] chars;
 		
-	}
-	
-	private class InitialElement extends Element {
+		private final byte[] utf8;
 		
-		protected boolean needsComma() {
-			return false;
-		}
-		
-		protected void writeIndent() throws IOException {
-			// initial element, no indent...
+		public Name(String name) {
+			if (name == null) {
+				throw new IllegalArgumentException("name cannot be null");
+			}
+			StringWriter escaped = new StringWriter();
+			try {
+				JsonOutput output = new CharOutput(escaped, 64);
+				output.writeString(name);
+				output.writeAscii(COLON);
+				output.flush();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			this.name = name;
+			this.chars = escaped.toString().toCharArray();
+			this.utf8 = escaped.toString().getBytes(UTF8);
 		}
 		
 		@Override
 		public String toString() {
-			return "initial";
+			return name;
 		}
 		
 	}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of {@link JsonWriter}s, so that writers and their buffers
+ * are reused across documents, e.g. the responses of a server. The pool
+ * can be shared by threads, a writer must only be used by one thread until
+ * it is released.
+ * <p>
+ * Writers are handed out with their settings reset to the defaults. On
+ * release, output still in the buffer is written to the target of the
+ * writer, so nothing is ever written to a target after its writer was
+ * released. A released writer whose document is incomplete, e.g. because
+ * writing failed, is discarded.
+ *
+ * <pre>
+ * JsonWriter writer = pool.acquire(response.getOutputStream());
+ * try {
+ *     ...
+ *     writer.flush();
+ * } finally {
+ *     pool.release(writer);
+ * }
+ * </pre>
+ *
+ * @author rasifix
+ */
+public class JsonWriterPool {
+
+	private final BlockingQueue<JsonWriter> idle;
+
+	/**
+	 * @param capacity the maximum number of idle writers kept
+	 */
+	public JsonWriterPool(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1");
+		}
+		this.idle = new ArrayBlockingQueue<JsonWriter>(capacity);
+	}
+
+	/**
+	 * @param writer the writer to which the document is written
+	 * @return a writer for a new document
+	 */
+	public JsonWriter acquire(Writer writer) {
+		JsonWriter jsonWriter = idle.poll();
+		if (jsonWriter == null) {
+			return new JsonWriter(writer);
+		}
+		jsonWriter.reset(writer);
+		return jsonWriter;
+	}
+
+	/**
+	 * @param out the stream to which the UTF-8 encoded document is written
+	 * @return a writer for a new document
+	 */
+	public JsonWriter acquire(OutputStream out) {
+		JsonWriter jsonWriter = idle.poll();
+		if (jsonWriter == null) {
+			return new JsonWriter(out);
+		}
+		jsonWriter.reset(out);
+		return jsonWriter;
+	}
+
+	/**
+	 * @param channel the channel to which the UTF-8 encoded document is written
+	 * @return a writer for a new document
+	 */
+	public JsonWriter acquire(WritableByteChannel channel) {
+		JsonWriter jsonWriter = idle.poll();
+		if (jsonWriter == null) {
+			return new JsonWriter(channel);
+		}
+		jsonWriter.reset(channel);
+		return jsonWriter;
+	}
+
+	/**
+	 * Returns a writer to the pool. Output that was not written to the
+	 * target yet is written now, the target is neither flushed nor closed.
+	 * If that fails, the writer is discarded.
+	 *
+	 * @param writer the writer, which must not be used afterwards
+	 * @throws RuntimeIOException if writing the buffered output fails
+	 */
+	public void release(JsonWriter writer) {
+		if (writer == null) {
+			throw new IllegalArgumentException("writer cannot be null");
+		}
+		if (!writer.isComplete()) {
+			return;
+		}
+		writer.drain();
+		writer.setPrettyPrint(false);
+		writer.setDecimalPlaces(-1);
+		idle.offer(writer);
+	}
+
+}
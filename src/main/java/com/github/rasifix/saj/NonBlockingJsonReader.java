@@ -0,0 +1,169 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj;
+
+import java.nio.ByteBuffer;
+
+import com.github.rasifix.saj.internal.PathFilter;
+import com.github.rasifix.saj.internal.Utf8Parser;
+
+/**
+ * Push style counterpart of {@link JsonReader} for non-blocking I/O. Instead
+ * of pulling from a stream, UTF-8 encoded input is fed to the reader in
+ * chunks as it arrives. The {@link JsonContentHandler} is notified as soon
+ * as a token is complete, incomplete tokens are kept until the next chunk
+ * arrives. No thread ever blocks waiting for input.
+ *
+ * <pre>
+ * NonBlockingJsonReader reader = new NonBlockingJsonReader(handler);
+ * reader.feed(chunk1);
+ * reader.feed(chunk2);
+ * reader.endOfInput();
+ * </pre>
+ *
+ * A reader is not thread-safe. It can be reused for the next document
+ * after {@link #endOfInput()} by calling {@link #reset()}.
+ *
+ * @author rasifix
+ */
+public class NonBlockingJsonReader {
+
+	private final Utf8Parser parser;
+
+	/**
+	 * Whether input has been fed since the reader was created or reset.
+	 */
+	private boolean fed;
+
+	public NonBlockingJsonReader(JsonContentHandler handler) {
+		if (handler == null) {
+			throw new IllegalArgumentException("handler cannot be null");
+		}
+		this.parser = new Utf8Parser(handler);
+		this.parser.startFeeding();
+	}
+
+	/**
+	 * Sets the initial size of the buffer that holds incomplete tokens.
+	 * Takes effect immediately if no input has been fed to the current
+	 * document yet, otherwise on the next {@link #reset()}.
+	 *
+	 * @param bufferSize the size of the buffer in bytes
+	 */
+	public void setBufferSize(int bufferSize) {
+		parser.setBufferSize(bufferSize);
+		restartIfUnfed();
+	}
+
+	/**
+	 * @param useBigDecimal true to report non-integral numbers as BigDecimal
+	 *        instead of double, see {@link JsonReader#setUseBigDecimal(boolean)}
+	 */
+	public void setUseBigDecimal(boolean useBigDecimal) {
+		parser.setUseBigDecimal(useBigDecimal);
+	}
+
+	/**
+	 * Restricts the events reported to the handler to the given paths, see
+	 * {@link JsonReader#setIncludePaths(String...)}. Takes effect immediately
+	 * if no input has been fed to the current document yet, otherwise on the
+	 * next {@link #reset()}.
+	 *
+	 * @param includePaths the paths to include, none to include everything
+	 * @throws IllegalArgumentException if the paths or a path are null or a
+	 *         path is not valid
+	 */
+	public void setIncludePaths(String... includePaths) {
+		if (includePaths == null) {
+			throw new IllegalArgumentException("include paths cannot be null");
+		}
+		parser.setFilter(includePaths.length > 0 ? new PathFilter(includePaths) : null);
+		restartIfUnfed();
+	}
+
+	/**
+	 * Applies changed settings to the current document if it has not
+	 * started yet.
+	 */
+	private void restartIfUnfed() {
+		if (!fed) {
+			parser.startFeeding();
+		}
+	}
+
+	/**
+	 * Selects whether the input is a sequence of records, e.g.
+	 * newline-delimited JSON, see {@link JsonReader#setRecords(boolean)}.
+	 * Records are reported as soon as they are complete.
+	 *
+	 * @param records true to read a sequence of records
+	 */
+	public void setRecords(boolean records) {
+		parser.setRecords(records);
+	}
+
+	/**
+	 * Stops parsing the current document, typically invoked by the handler
+	 * from within a callback. No further callbacks are made, input fed
+	 * afterwards is discarded until the reader is {@link #reset()}.
+	 */
+	public void stop() {
+		parser.stop();
+	}
+
+	/**
+	 * Feeds the remaining bytes of the given buffer to the reader. The
+	 * buffer is consumed completely.
+	 *
+	 * @param input the input chunk
+	 * @throws JsonParseException if the input is not well-formed JSON
+	 */
+	public void feed(ByteBuffer input) {
+		fed = true;
+		parser.feed(input);
+	}
+
+	/**
+	 * Feeds a chunk of input to the reader.
+	 *
+	 * @param input the buffer containing the chunk
+	 * @param offset the offset of the chunk
+	 * @param length the length of the chunk
+	 * @throws JsonParseException if the input is not well-formed JSON
+	 */
+	public void feed(byte[] input, int offset, int length) {
+		fed = true;
+		parser.feed(input, offset, length);
+	}
+
+	/**
+	 * Signals that the input is complete.
+	 *
+	 * @throws JsonParseException if the input is not a complete JSON value
+	 */
+	public void endOfInput() {
+		parser.endOfInput();
+	}
+
+	/**
+	 * Prepares the reader for the next document.
+	 */
+	public void reset() {
+		fed = false;
+		parser.startFeeding();
+	}
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.github.rasifix.saj.internal.CharParser;
+
+/**
+ * Reads a JSON document consisting of a large top-level array on several
+ * threads. The elements are split into chunks, each chunk is parsed by a
+ * task of the given {@link ExecutorService} and reported to a handler of its
+ * own. Every handler receives its elements as a complete array, so that the
+ * results of the handlers concatenated in order are the elements of the
+ * document.
+ * <p>
+ * The chunk boundaries are guessed: from evenly spaced positions, the next
+ * comma followed by the same character as the first element (e.g.
+ * <code>{</code>) is assumed to separate two elements. A guess is confirmed
+ * when the preceding chunk, which ends at the first comma between elements
+ * from the guessed boundary on, ends exactly there. Chunks after a wrong
+ * guess (a comma inside a string or a nested value) are discarded and their
+ * elements parsed again from the actual boundary. Handlers should therefore
+ * only collect their elements and not act on them. Discarded chunks, and
+ * all chunks once parsing failed, are cancelled: their tasks are interrupted
+ * and stop parsing before their next element.
+ * <p>
+ * The whole document has to be in memory.
+ *
+ * @author rasifix
+ * @param <H> the type of the handlers
+ */
+public class ParallelArrayReader<H extends JsonContentHandler> {
+
+	/**
+	 * Chunks are not made smaller than this many chars by default.
+	 */
+	public static final int DEFAULT_MIN_CHUNK_SIZE = 1024 * 1024;
+
+	/**
+	 * Creates the handler of a chunk. Invoked concurrently.
+	 *
+	 * @param <H> the type of the handlers
+	 */
+	public interface HandlerFactory<H extends JsonContentHandler> {
+
+		H createHandler();
+
+	}
+
+	private final ExecutorService executor;
+
+	private final HandlerFactory<H> factory;
+
+	private int chunkCount = Runtime.getRuntime().availableProcessors();
+
+	private int minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+
+	private boolean useBigDecimal;
+
+	/**
+	 * @param executor the executor running the chunks, it is not shut down
+	 * @param factory the factory of the chunk handlers
+	 */
+	public ParallelArrayReader(ExecutorService executor, HandlerFactory<H> factory) {
+		if (executor == null) {
+			throw new IllegalArgumentException("executor cannot be null");
+		}
+		if (factory == null) {
+			throw new IllegalArgumentException("factory cannot be null");
+		}
+		this.executor = executor;
+		this.factory = factory;
+	}
+
+	/**
+	 * @param chunkCount the number of chunks, by default the number of processors
+	 */
+	public void setChunkCount(int chunkCount) {
+		if (chunkCount < 1) {
+			throw new IllegalArgumentException("chunk count must be at least 1");
+		}
+		this.chunkCount = chunkCount;
+	}
+
+	/**
+	 * @param minChunkSize the minimum size of a chunk in chars
+	 */
+	public void setMinChunkSize(int minChunkSize) {
+		if (minChunkSize < 1) {
+			throw new IllegalArgumentException("minimum chunk size must be at least 1");
+		}
+		this.minChunkSize = minChunkSize;
+	}
+
+	/**
+	 * @param useBigDecimal true to report non-integral numbers as BigDecimal
+	 *        instead of double
+	 */
+	public void setUseBigDecimal(boolean useBigDecimal) {
+		this.useBigDecimal = useBigDecimal;
+	}
+
+	/**
+	 * @param json the JSON expression, an array
+	 * @return the handlers of the chunks in document order
+	 * @throws JsonParseException if the input is not a well-formed JSON array
+	 */
+	public List<H> parse(String json) {
+		char[] input = json.toCharArray();
+		return parse(input, 0, input.length);
+	}
+
+	/**
+	 * @param input the array containing the JSON expression, an array
+	 * @param offset the start of the JSON expression
+	 * @param length the length of the JSON expression
+	 * @return the handlers of the chunks in document order
+	 * @throws JsonParseException if the input is not a well-formed JSON array
+	 */
+	public List<H> parse(char[] input, int offset, int length) {
+		final int end = offset + length;
+		int start = skipWhitespace(input, offset, end);
+		if (start == end || input[start] != '[') {
+			throw new JsonParseException("expected '[' at position " + start);
+		}
+
+		// guess the boundaries: begins[0] is the array, the others are commas
+		int count = Math.max(1, Math.min(chunkCount, length / minChunkSize));
+		int[] begins = new int[count];
+		begins[0] = start;
+		int first = skipWhitespace(input, start + 1, end);
+		char elementStart = first < end && (input[first] == '{' || input[first] == '[') ? input[first] : 0;
+		int guessed = 1;
+		for (int k = 1; k < count; k++) {
+			int from = Math.max(offset + (int) ((long) length * k / count), begins[guessed - 1] + 1);
+			int comma = findComma(input, from, end, elementStart);
+			if (comma < 0) {
+				break;
+			}
+			begins[guessed++] = comma;
+		}
+
+		List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>(guessed);
+		try {
+			for (int k = 0; k < guessed; k++) {
+				int split = k + 1 < guessed ? begins[k + 1] : -1;
+				futures.add(executor.submit(new Chunk(input, begins[k], end, k == 0, split)));
+			}
+
+			// follow the confirmed boundaries, parse chunks after wrong guesses again
+			List<H> handlers = new ArrayList<H>(guessed);
+			long next = start;
+			int k = 0;
+			while (next >= 0) {
+				while (k < guessed && begins[k] < next) {
+					futures.get(k++).cancel(true);
+				}
+				Chunk chunk;
+				if (k < guessed && begins[k] == next) {
+					chunk = await(futures.get(k++));
+				} else {
+					int split = k < guessed ? begins[k] : -1;
+					chunk = new Chunk(input, (int) next, end, false, split).call();
+				}
+				handlers.add(chunk.handler);
+				next = chunk.next;
+			}
+			return handlers;
+		} finally {
+			// interrupted chunks stop at the next element
+			for (Future<Chunk> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private Chunk await(Future<Chunk> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for a chunk", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Finds the next comma that is followed by the given character.
+	 *
+	 * @param elementStart the first character of elements, 0 to accept any
+	 * @return the position of the comma or -1
+	 */
+	private static int findComma(char[] input, int from, int end, char elementStart) {
+		for (int p = from; p < end; p++) {
+			if (input[p] == ',') {
+				int q = skipWhitespace(input, p + 1, end);
+				if (elementStart == 0 || q < end && input[q] == elementStart) {
+					return p;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static int skipWhitespace(char[] input, int p, int end) {
+		while (p < end && (input[p] == ' ' || input[p] == '\t' || input[p] == '\n' || input[p] == '\r')) {
+			p++;
+		}
+		return p;
+	}
+
+	/**
+	 * Parses the elements from a boundary up to the first comma between
+	 * elements at or after the next boundary.
+	 */
+	private class Chunk implements Callable<Chunk> {
+
+		private final char[] input;
+
+		private final int begin;
+
+		private final int limit;
+
+		private final boolean first;
+
+		private final int split;
+
+		private H handler;
+
+		/**
+		 * The comma at which the chunk ended, -1 at the end of the array.
+		 */
+		private long next;
+
+		Chunk(char[] input, int begin, int end, boolean first, int split) {
+			this.input = input;
+			this.begin = begin;
+			this.limit = end;
+			this.first = first;
+			this.split = split;
+		}
+
+		public Chunk call() {
+			handler = factory.createHandler();
+			CharParser parser = new CharParser(handler);
+			parser.setUseBigDecimal(useBigDecimal);
+			// the element starts after the comma
+			int from = first ? begin : begin + 1;
+			next = parser.parseElements(input, from, limit - from, first, split);
+			return this;
+		}
+
+	}
+
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.rasifix.saj.internal.CharParser;
+
+/**
+ * Reads newline-delimited JSON (JSON Lines) on several threads. The input is
+ * read on the calling thread and cut into batches of complete lines, which
+ * are parsed by a bounded number of workers running on the given
+ * {@link ExecutorService}. Every worker has a handler of its own that receives
+ * the records of the batches the worker parsed, see
+ * {@link JsonReader#setRecords(boolean)}. Records are thus distributed over
+ * the handlers, each handler receives its records in document order.
+ * <p>
+ * Unlike {@link JsonReader#setRecords(boolean)}, which accepts any sequence
+ * of values, the input must contain exactly one record per line: records
+ * must not span lines, e.g. pretty-printed, and strings must not contain
+ * raw line breaks. Each line is parsed on its own, a line that is not a
+ * complete record is rejected with a {@link JsonParseException}, independent
+ * of how the input is cut into batches.
+ * <p>
+ * Reading blocks while all workers are busy, so at most one batch per
+ * worker is held in memory. Positions in parse errors are relative to the
+ * start of the batch.
+ *
+ * @author rasifix
+ * @param <H> the type of the handlers
+ */
+public class ParallelRecordReader<H extends JsonContentHandler> {
+
+	/**
+	 * Default size of a batch in chars.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+
+	private final ExecutorService executor;
+
+	private final ParallelArrayReader.HandlerFactory<H> factory;
+
+	private int workerCount = Runtime.getRuntime().availableProcessors();
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private boolean useBigDecimal;
+
+	/**
+	 * @param executor the executor running the workers, it is not shut down
+	 * @param factory the factory of the worker handlers
+	 */
+	public ParallelRecordReader(ExecutorService executor, ParallelArrayReader.HandlerFactory<H> factory) {
+		if (executor == null) {
+			throw new IllegalArgumentException("executor cannot be null");
+		}
+		if (factory == null) {
+			throw new IllegalArgumentException("factory cannot be null");
+		}
+		this.executor = executor;
+		this.factory = factory;
+	}
+
+	/**
+	 * @param workerCount the number of workers, by default the number of processors
+	 */
+	public void setWorkerCount(int workerCount) {
+		if (workerCount < 1) {
+			throw new IllegalArgumentException("worker count must be at least 1");
+		}
+		this.workerCount = workerCount;
+	}
+
+	/**
+	 * Sets the size of the batches handed to the workers. Batches contain
+	 * complete lines, so a batch grows if a single line does not fit.
+	 *
+	 * @param batchSize the size of a batch in chars
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 16) {
+			throw new IllegalArgumentException("batch size must be at least 16");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param useBigDecimal true to report non-integral numbers as BigDecimal
+	 *        instead of double
+	 */
+	public void setUseBigDecimal(boolean useBigDecimal) {
+		this.useBigDecimal = useBigDecimal;
+	}
+
+	/**
+	 * Reads UTF-8 encoded records from the given stream. The stream is not closed.
+	 * The input is decoded to chars on the calling thread before it is cut
+	 * into batches, the workers parse chars like with {@link #parse(Reader)}.
+	 *
+	 * @param in the input stream from which to read
+	 * @return the handlers of the workers
+	 * @throws IOException if reading fails
+	 * @throws JsonParseException if a record is not well-formed JSON
+	 */
+	public List<H> parse(InputStream in) throws IOException {
+		return parse(new InputStreamReader(in, "UTF-8"));
+	}
+
+	/**
+	 * Reads records from the given reader. The reader is not closed.
+	 *
+	 * @param reader the reader from which to read
+	 * @return the handlers of the workers
+	 * @throws IOException if reading fails
+	 * @throws InterruptedIOException if the calling thread is interrupted,
+	 *         parse still waits for the workers to finish their batches
+	 * @throws JsonParseException if a record is not well-formed JSON
+	 */
+	public List<H> parse(Reader reader) throws IOException {
+		BlockingQueue<Worker<H>> idle = new ArrayBlockingQueue<Worker<H>>(workerCount);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<H> handlers = new ArrayList<H>(workerCount);
+		for (int i = 0; i < workerCount; i++) {
+			H handler = factory.createHandler();
+			handlers.add(handler);
+			idle.add(new Worker<H>(handler, useBigDecimal, idle, failure));
+		}
+
+		char[] buffer = new char[batchSize];
+		int length = 0;
+		boolean interrupted;
+		try {
+			for (;;) {
+				if (length == buffer.length) {
+					char[] newBuffer = new char[buffer.length * 2];
+					System.arraycopy(buffer, 0, newBuffer, 0, length);
+					buffer = newBuffer;
+				}
+				int read = reader.read(buffer, length, buffer.length - length);
+				if (read == -1) {
+					break;
+				}
+				length += read;
+				int end = length;
+				while (end > 0 && buffer[end - 1] != '\n') {
+					end--;
+				}
+				if (end > 0 && length > buffer.length / 2) {
+					buffer = dispatch(idle, failure, buffer, end, length);
+					length -= end;
+				}
+			}
+			if (length > 0) {
+				dispatch(idle, failure, buffer, length, length);
+			}
+		} finally {
+			// wait for the workers before returning or failing
+			interrupted = awaitWorkers(idle);
+		}
+		rethrow(failure.get());
+		if (interrupted) {
+			throw new InterruptedIOException("interrupted while waiting for the workers");
+		}
+		return handlers;
+	}
+
+	/**
+	 * Waits until all workers are idle. An interrupt does not end the wait,
+	 * so that it cannot mask the failure that is propagated, it is restored
+	 * afterwards.
+	 *
+	 * @return true if the thread was interrupted while waiting
+	 */
+	private boolean awaitWorkers(BlockingQueue<Worker<H>> idle) {
+		boolean interrupted = false;
+		int waiting = workerCount;
+		while (waiting > 0) {
+			try {
+				idle.take();
+				waiting--;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return interrupted;
+	}
+
+	/**
+	 * Hands the lines before <code>end</code> to the next idle worker.
+	 *
+	 * @return the buffer containing the rest of the input at its start
+	 */
+	private char[] dispatch(BlockingQueue<Worker<H>> idle, AtomicReference<Throwable> failure,
+			char[] buffer, int end, int length) throws IOException {
+		Worker<H> worker = take(idle);
+		Throwable cause = failure.get();
+		if (cause != null) {
+			idle.add(worker);
+			rethrow(cause);
+		}
+		// the buffers are swapped, only the incomplete line is copied
+		char[] next = worker.batch;
+		if (next == null || next.length < buffer.length) {
+			next = new char[buffer.length];
+		}
+		System.arraycopy(buffer, end, next, 0, length - end);
+		worker.batch = buffer;
+		worker.length = end;
+		try {
+			executor.execute(worker);
+		} catch (RuntimeException e) {
+			idle.add(worker);
+			throw e;
+		}
+		return next;
+	}
+
+	private static <H extends JsonContentHandler> Worker<H> take(BlockingQueue<Worker<H>> idle) throws IOException {
+		try {
+			return idle.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a worker");
+		}
+	}
+
+	private static void rethrow(Throwable cause) {
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		} else if (cause instanceof Error) {
+			throw (Error) cause;
+		} else if (cause != null) {
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Parses batches with the parser and handler of a worker. Puts itself
+	 * back into the queue of idle workers when done.
+	 */
+	private static class Worker<H extends JsonContentHandler> implements Runnable {
+
+		private final CharParser parser;
+
+		private final BlockingQueue<Worker<H>> idle;
+
+		private final AtomicReference<Throwable> failure;
+
+		private char[] batch;
+
+		private int length;
+
+		Worker(H handler, boolean useBigDecimal, BlockingQueue<Worker<H>> idle, AtomicReference<Throwable> failure) {
+			this.parser = new CharParser(handler);
+			this.parser.setUseBigDecimal(useBigDecimal);
+			this.parser.setRecords(true);
+			this.idle = idle;
+			this.failure = failure;
+		}
+
+		public void run() {
+			try {
+				if (failure.get() == null) {
+					int start = 0;
+					for (int i = 0; i < length; i++) {
+						if (batch[i] == '\n') {
+							parseLine(start, i);
+							start = i + 1;
+						}
+					}
+					parseLine(start, length);
+				}
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			} finally {
+				idle.add(this);
+			}
+		}
+
+		private void parseLine(int start, int end) {
+			try {
+				parser.parse(batch, start, end - start);
+			} catch (JsonParseException e) {
+				throw new JsonParseException("invalid line at position " + start
+						+ ", every line must be one complete record: " + e.getMessage(), e);
+			}
+		}
+
+	}
+
+}
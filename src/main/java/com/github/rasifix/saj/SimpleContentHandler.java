@@ -15,26 +15,62 @@
  */
 package com.github.rasifix.saj;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 /**
  * JsonContentHandler that builds Maps and Lists for JSON objects and JSON arrays.
+ * Arrays are collected in ArrayLists, so elements of the result can be
+ * accessed by index in constant time.
  *  
  * @author rasifix
  */
 public class SimpleContentHandler implements JsonContentHandler {
 
+	private static final int DEFAULT_ARRAY_SIZE = 10;
+
 	private Object result;
 	
 	private State state;
 	
+	private int expectedSize = DEFAULT_ARRAY_SIZE;
+	
+	private boolean immutable;
+	
 	public Object getResult() {
 		return result;
 	}
 	
+	/**
+	 * Sets the number of elements expected in the outermost array. Its list
+	 * is created with this capacity, so that the elements of a large array
+	 * do not have to be copied while the list grows.
+	 * 
+	 * @param expectedSize the expected number of elements
+	 */
+	public void setExpectedSize(int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("expected size cannot be negative");
+		}
+		this.expectedSize = expectedSize;
+	}
+	
+	/**
+	 * Determines whether the result is immutable. If set, the lists of the
+	 * result are trimmed to their size and neither lists nor maps can be
+	 * modified.
+	 * 
+	 * @param immutable true to build an immutable result
+	 */
+	public void setImmutable(boolean immutable) {
+		this.immutable = immutable;
+	}
+	
 	@Override
 	public void startObject() {
 		Map<String, Object> obj = new LinkedHashMap<String, Object>();
@@ -58,6 +94,9 @@ public class SimpleContentHandler implements JsonContentHandler {
 	@Override
 	public void endObject() {
 		Object value = state.getValue();
+		if (immutable) {
+			value = Collections.unmodifiableMap((Map<?, ?>) value);
+		}
 		this.state = state.getParent();
 		
 		if (this.state == null) {
@@ -69,12 +108,15 @@ public class SimpleContentHandler implements JsonContentHandler {
 
 	@Override
 	public void startArray() {
-		this.state = new ArrayState(state);
+		this.state = new ArrayState(state, state == null ? expectedSize : DEFAULT_ARRAY_SIZE);
 	}
 
 	@Override
 	public void endArray() {
 		Object value = state.getValue();
+		if (immutable) {
+			value = Collections.unmodifiableList(Arrays.asList(((List<?>) value).toArray()));
+		}
 		this.state = state.getParent();
 		
 		if (this.state == null) {
@@ -99,6 +141,16 @@ public class SimpleContentHandler implements JsonContentHandler {
 		this.state.value(number);
 	}
 
+	@Override
+	public void value(long number) {
+		this.state.value(number);
+	}
+
+	@Override
+	public void value(BigDecimal number) {
+		this.state.value(number);
+	}
+
 	@Override
 	public void value(boolean bool) {
 		this.state.value(bool);
@@ -160,9 +212,9 @@ public class SimpleContentHandler implements JsonContentHandler {
 		
 		private final List<Object> content;
 		
-		ArrayState(State parent) {
+		ArrayState(State parent, int expectedSize) {
 			this.parent = parent;
-			this.content = new LinkedList<Object>();
+			this.content = new ArrayList<Object>(expectedSize);
 		}
 		
 		@Override
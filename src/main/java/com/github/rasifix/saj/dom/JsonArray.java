@@ -15,15 +15,92 @@
  */
 package com.github.rasifix.saj.dom;
 
+import java.math.BigDecimal;
 import java.util.AbstractList;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import com.github.rasifix.saj.JsonContentHandler;
 
+/**
+ * A JSON array. Arrays consisting only of numbers store their elements in a
+ * primitive array, elements are only boxed when accessed as Objects. The
+ * typed getters and {@link #streamTo} never box. Ints are widened to longs
+ * or doubles and longs to doubles when numbers of different types are
+ * mixed, e.g. <code>[0, 0.5, 1]</code>. The original type of each element is
+ * remembered, so that it is returned as the same Integer, Long or Double.
+ * Adding an element that is not a number, or a long that has no exact
+ * double representation to an array of doubles, converts the storage to
+ * Objects.
+ *
+ * @author rasifix
+ */
 public class JsonArray extends AbstractList<Object> {
 
-	private final List<Object> values = new ArrayList<Object>();
+	private static final int INITIAL_CAPACITY = 8;
+
+	// storage types, the first element determines the type
+	private static final byte EMPTY = 0;
+
+	private static final byte INTS = 1;
+
+	private static final byte LONGS = 2;
+
+	private static final byte DOUBLES = 3;
+
+	private static final byte OBJECTS = 4;
+
+	// original types of widened elements
+	private static final byte NATIVE = 0;
+
+	private static final byte INT_ELEMENT = 1;
+
+	private static final byte LONG_ELEMENT = 2;
+
+	/**
+	 * Longs up to this magnitude are exactly representable as doubles.
+	 */
+	private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+	private byte type = EMPTY;
+
+	private int size;
+
+	private int[] ints;
+
+	private long[] longs;
+
+	private double[] doubles;
+
+	private Object[] objects;
+
+	/**
+	 * The original type of each element stored as long or double, null
+	 * while all elements have the type of the storage.
+	 */
+	private byte[] kinds;
+
+	/**
+	 * The document from which unresolved elements are decoded, null unless
+	 * this array was created by a {@link LazyModelReader}.
+	 */
+	private LazyDocument document;
+
+	/**
+	 * Index entries of the elements, see {@link LazyDocument#UNRESOLVED}.
+	 */
+	private int[] entries;
+
+	public JsonArray() {
+	}
+
+	JsonArray(LazyDocument document, int[] entries) {
+		this.document = document;
+		this.entries = entries;
+		this.type = OBJECTS;
+		this.size = entries.length;
+		this.objects = new Object[Math.max(INITIAL_CAPACITY, size)];
+		Arrays.fill(objects, 0, size, LazyDocument.UNRESOLVED);
+	}
 	
 	public JsonObject getObject(int index) {
 		return (JsonObject) get(index);
@@ -38,54 +115,359 @@ public class JsonArray extends AbstractList<Object> {
 	}
 
 	public String getString(int index) {
-		return (String) values.get(index);
+		return (String) get(index);
 	}
 
-	public double getInt(int index) {
-		return ((Number) values.get(index)).intValue();
+	public int getInt(int index) {
+		checkIndex(index);
+		switch (type) {
+		case INTS:
+			return ints[index];
+		case LONGS:
+			return (int) longs[index];
+		case DOUBLES:
+			if (kind(index) == LONG_ELEMENT) {
+				return (int) (long) doubles[index];
+			}
+			return (int) doubles[index];
+		default:
+			return ((Number) object(index)).intValue();
+		}
+	}
+
+	public long getLong(int index) {
+		checkIndex(index);
+		switch (type) {
+		case INTS:
+			return ints[index];
+		case LONGS:
+			return longs[index];
+		case DOUBLES:
+			return (long) doubles[index];
+		default:
+			return ((Number) object(index)).longValue();
+		}
 	}
 
 	public double getDouble(int index) {
-		return ((Number) values.get(index)).doubleValue();
+		checkIndex(index);
+		switch (type) {
+		case INTS:
+			return ints[index];
+		case LONGS:
+			return longs[index];
+		case DOUBLES:
+			return doubles[index];
+		default:
+			return ((Number) object(index)).doubleValue();
+		}
+	}
+
+	/**
+	 * Appends an int without boxing it.
+	 * 
+	 * @param value the value to append
+	 */
+	public void addInt(int value) {
+		if (type == EMPTY) {
+			type = INTS;
+			ints = new int[INITIAL_CAPACITY];
+		}
+		if (type == INTS) {
+			if (size == ints.length) {
+				ints = Arrays.copyOf(ints, grow(size));
+			}
+			ints[size++] = value;
+			modCount++;
+		} else if (type == LONGS) {
+			appendLong(value, INT_ELEMENT);
+		} else if (type == DOUBLES) {
+			appendDouble(value, INT_ELEMENT);
+		} else {
+			add(Integer.valueOf(value));
+		}
+	}
+
+	/**
+	 * Appends a long without boxing it.
+	 * 
+	 * @param value the value to append
+	 */
+	public void addLong(long value) {
+		if (type == EMPTY) {
+			type = LONGS;
+			longs = new long[INITIAL_CAPACITY];
+		} else if (type == INTS) {
+			widenToLongs();
+		}
+		if (type == LONGS) {
+			appendLong(value, NATIVE);
+		} else if (type == DOUBLES && isExactDouble(value)) {
+			appendDouble(value, LONG_ELEMENT);
+		} else {
+			toObjects();
+			add(Long.valueOf(value));
+		}
+	}
+
+	/**
+	 * Appends a double without boxing it.
+	 * 
+	 * @param value the value to append
+	 */
+	public void addDouble(double value) {
+		if (type == EMPTY) {
+			type = DOUBLES;
+			doubles = new double[INITIAL_CAPACITY];
+		} else if (type == INTS || type == LONGS) {
+			widenToDoubles();
+		}
+		if (type == DOUBLES) {
+			appendDouble(value, NATIVE);
+		} else {
+			add(Double.valueOf(value));
+		}
+	}
+
+	private void appendLong(long value, byte kind) {
+		if (size == longs.length) {
+			longs = Arrays.copyOf(longs, grow(size));
+		}
+		setKind(size, kind, longs.length);
+		longs[size++] = value;
+		modCount++;
+	}
+
+	private void appendDouble(double value, byte kind) {
+		if (size == doubles.length) {
+			doubles = Arrays.copyOf(doubles, grow(size));
+		}
+		setKind(size, kind, doubles.length);
+		doubles[size++] = value;
+		modCount++;
+	}
+
+	private void setKind(int index, byte kind, int capacity) {
+		if (kinds == null) {
+			if (kind == NATIVE) {
+				return;
+			}
+			kinds = new byte[capacity];
+		} else if (index >= kinds.length) {
+			kinds = Arrays.copyOf(kinds, capacity);
+		}
+		kinds[index] = kind;
+	}
+
+	private byte kind(int index) {
+		return kinds != null ? kinds[index] : NATIVE;
+	}
+
+	private void widenToLongs() {
+		longs = new long[ints.length];
+		kinds = new byte[ints.length];
+		for (int i = 0; i < size; i++) {
+			longs[i] = ints[i];
+			kinds[i] = INT_ELEMENT;
+		}
+		ints = null;
+		type = LONGS;
+	}
+
+	/**
+	 * Converts ints or longs to doubles, or to Objects if a long has no
+	 * exact double representation.
+	 */
+	private void widenToDoubles() {
+		if (type == LONGS) {
+			for (int i = 0; i < size; i++) {
+				if (!isExactDouble(longs[i])) {
+					toObjects();
+					return;
+				}
+			}
+		}
+		int capacity = type == INTS ? ints.length : longs.length;
+		double[] widened = new double[capacity];
+		byte[] widenedKinds = new byte[capacity];
+		for (int i = 0; i < size; i++) {
+			if (type == INTS) {
+				widened[i] = ints[i];
+				widenedKinds[i] = INT_ELEMENT;
+			} else {
+				widened[i] = longs[i];
+				widenedKinds[i] = kind(i) == INT_ELEMENT ? INT_ELEMENT : LONG_ELEMENT;
+			}
+		}
+		doubles = widened;
+		kinds = widenedKinds;
+		ints = null;
+		longs = null;
+		type = DOUBLES;
+	}
+
+	private static boolean isExactDouble(long value) {
+		return value >= -MAX_EXACT_DOUBLE && value <= MAX_EXACT_DOUBLE;
 	}
 	
 	public void streamTo(JsonContentHandler handler) {
 		handler.startArray();
-		for (Object content : this) {
-			if (content instanceof JsonObject) {
-				((JsonObject) content).streamTo(handler);
-			} else if (content instanceof JsonArray) {
-				((JsonArray) content).streamTo(handler);
-			} else if (content instanceof String) {
-				handler.value((String) content);
-			} else if (content instanceof Double) {
-				handler.value((Double) content);
-			} else if (content instanceof Integer) {
-				handler.value((Integer) content);
-			} else if (content instanceof Boolean) {
-				handler.value((Boolean) content);
-			} else if (content == null) {
-				handler.nullValue();
-			} else {
-				throw new RuntimeException("unsupported type " + content.getClass());
+		switch (type) {
+		case INTS:
+			for (int i = 0; i < size; i++) {
+				handler.value(ints[i]);
+			}
+			break;
+		case LONGS:
+			for (int i = 0; i < size; i++) {
+				if (kind(i) == INT_ELEMENT) {
+					handler.value((int) longs[i]);
+				} else {
+					handler.value(longs[i]);
+				}
+			}
+			break;
+		case DOUBLES:
+			for (int i = 0; i < size; i++) {
+				byte kind = kind(i);
+				if (kind == INT_ELEMENT) {
+					handler.value((int) doubles[i]);
+				} else if (kind == LONG_ELEMENT) {
+					handler.value((long) doubles[i]);
+				} else {
+					handler.value(doubles[i]);
+				}
+			}
+			break;
+		default:
+			for (int i = 0; i < size; i++) {
+				streamTo(handler, object(i));
 			}
 		}
 		handler.endArray();
 	}
+
+	private static void streamTo(JsonContentHandler handler, Object content) {
+		if (content instanceof JsonObject) {
+			((JsonObject) content).streamTo(handler);
+		} else if (content instanceof JsonArray) {
+			((JsonArray) content).streamTo(handler);
+		} else if (content instanceof String) {
+			handler.value((String) content);
+		} else if (content instanceof Double) {
+			handler.value((Double) content);
+		} else if (content instanceof Integer) {
+			handler.value((Integer) content);
+		} else if (content instanceof Long) {
+			handler.value((Long) content);
+		} else if (content instanceof BigDecimal) {
+			handler.value((BigDecimal) content);
+		} else if (content instanceof Boolean) {
+			handler.value((Boolean) content);
+		} else if (content == null) {
+			handler.nullValue();
+		} else {
+			throw new RuntimeException("unsupported type " + content.getClass());
+		}
+	}
 	
 	@Override
 	public Object get(int index) {
-		return values.get(index);
+		checkIndex(index);
+		switch (type) {
+		case INTS:
+			return ints[index];
+		case LONGS:
+			if (kind(index) == INT_ELEMENT) {
+				return (int) longs[index];
+			}
+			return longs[index];
+		case DOUBLES:
+			byte kind = kind(index);
+			if (kind == INT_ELEMENT) {
+				return (int) doubles[index];
+			} else if (kind == LONG_ELEMENT) {
+				return (long) doubles[index];
+			}
+			return doubles[index];
+		default:
+			return object(index);
+		}
 	}
 
 	@Override
 	public int size() {
-		return values.size();
+		return size;
 	}
 
 	@Override
 	public void add(int idx, Object e) {
-		values.add(idx, e);
+		if (idx < 0 || idx > size) {
+			throw new IndexOutOfBoundsException("index " + idx + ", size " + size);
+		}
+		if (idx == size && type != OBJECTS) {
+			if (e instanceof Integer) {
+				addInt((Integer) e);
+				return;
+			} else if (e instanceof Long) {
+				addLong((Long) e);
+				return;
+			} else if (e instanceof Double) {
+				addDouble((Double) e);
+				return;
+			}
+		}
+		toObjects();
+		if (document != null && idx < size) {
+			// inserting shifts the elements, decode all of them before
+			for (int i = 0; i < size; i++) {
+				object(i);
+			}
+			document = null;
+			entries = null;
+		}
+		if (size == objects.length) {
+			objects = Arrays.copyOf(objects, grow(size));
+		}
+		System.arraycopy(objects, idx, objects, idx + 1, size - idx);
+		objects[idx] = e;
+		size++;
+		modCount++;
+	}
+
+	private void toObjects() {
+		if (type == OBJECTS) {
+			return;
+		}
+		Object[] converted = new Object[Math.max(INITIAL_CAPACITY, grow(size))];
+		for (int i = 0; i < size; i++) {
+			converted[i] = get(i);
+		}
+		objects = converted;
+		ints = null;
+		longs = null;
+		doubles = null;
+		kinds = null;
+		type = OBJECTS;
+	}
+
+	private Object object(int index) {
+		Object value = objects[index];
+		if (value == LazyDocument.UNRESOLVED) {
+			value = document.value(entries[index]);
+			objects[index] = value;
+		}
+		return value;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+		}
+	}
+
+	private static int grow(int capacity) {
+		return capacity + (capacity >> 1) + 1;
 	}
 	
 }
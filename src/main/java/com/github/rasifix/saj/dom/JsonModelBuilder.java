@@ -15,61 +15,99 @@
  */
 package com.github.rasifix.saj.dom;
 
-import java.util.LinkedList;
+import java.math.BigDecimal;
+import java.util.Arrays;
 
 import com.github.rasifix.saj.JsonContentHandler;
 
+/**
+ * JsonContentHandler that builds a {@link JsonObject} / {@link JsonArray}
+ * model. The open containers are kept on an array based stack, so that
+ * building a model allocates nothing but the model itself. A builder can be
+ * reused for further documents after calling {@link #reset()}.
+ * 
+ * @author rasifix
+ */
 public class JsonModelBuilder implements JsonContentHandler {
 
-    private LinkedList<Object> valueStack = new LinkedList<Object>();
+    // frame kinds
+    private static final byte OBJECT = 1;
+
+    private static final byte ARRAY = 2;
+
+    private byte[] kinds = new byte[16];
+
+    private Object[] containers = new Object[16];
+
+    /**
+     * Name of the current member of the object frames.
+     */
+    private String[] names = new String[16];
+
+    private int depth;
+
+    private Object result;
+    
+    /**
+     * Root of the shapes shared by the objects built by this builder.
+     */
+    private Shape shapes = new Shape();
     
     public Object getResult(){
-        if (valueStack == null || valueStack.size() == 0) {
-            return null;
-        }
-        return valueStack.peek();
+        return result;
+    }
+    
+    /**
+     * Prepares the builder for the next document. The model built so far
+     * is no longer referenced by the builder.
+     */
+    public void reset() {
+        Arrays.fill(containers, 0, depth, null);
+        Arrays.fill(names, 0, depth, null);
+        depth = 0;
+        result = null;
+        shapes = new Shape();
     }
     
     @Override
     public void endArray() {
-        trackBack();
+        pop();
     }
 
     @Override
     public void endObject() {
-        trackBack();
+        pop();
     }
 
     @Override
     public void endMember() {
-        Object value = valueStack.pop();
-        String key = (String) valueStack.pop();
-        JsonObject parent = (JsonObject) valueStack.peek();
-        parent.put(key, value);
+        names[depth - 1] = null;
     }
-
-    private void trackBack(){
-        if (valueStack.size() > 1){
-            Object value = valueStack.pop();
-            Object prev = valueStack.peek();
-            if (prev instanceof String){
-                valueStack.push(value);
-            }
+    
+    private void push(byte kind, Object container) {
+        if (depth == kinds.length) {
+            int capacity = 2 * depth;
+            kinds = Arrays.copyOf(kinds, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            names = Arrays.copyOf(names, capacity);
         }
+        kinds[depth] = kind;
+        containers[depth] = container;
+        depth++;
+    }
+    
+    private void pop() {
+        depth--;
+        containers[depth] = null;
     }
     
     private void consumeValue(Object value){
-        if (valueStack.isEmpty()) {
-            valueStack.push(value);
-            
+        if (depth == 0) {
+            result = value;
+        } else if (kinds[depth - 1] == ARRAY) {
+            ((JsonArray) containers[depth - 1]).add(value);
         } else {
-            Object prev = valueStack.peek();
-            if (prev instanceof JsonArray) {
-            	JsonArray array = (JsonArray) prev;
-                array.add(value);
-            } else{
-                valueStack.push(value);
-            }
+            ((JsonObject) containers[depth - 1]).put(names[depth - 1], value);
         }
     }
     
@@ -80,11 +118,33 @@ public class JsonModelBuilder implements JsonContentHandler {
     
     @Override
     public void value(double value) {
-        consumeValue(value);
+        if (depth > 0 && kinds[depth - 1] == ARRAY) {
+            ((JsonArray) containers[depth - 1]).addDouble(value);
+        } else {
+            consumeValue(value);
+        }
     }
     
     @Override
     public void value(int value) {
+        if (depth > 0 && kinds[depth - 1] == ARRAY) {
+            ((JsonArray) containers[depth - 1]).addInt(value);
+        } else {
+            consumeValue(value);
+        }
+    }
+    
+    @Override
+    public void value(long value) {
+        if (depth > 0 && kinds[depth - 1] == ARRAY) {
+            ((JsonArray) containers[depth - 1]).addLong(value);
+        } else {
+            consumeValue(value);
+        }
+    }
+    
+    @Override
+    public void value(BigDecimal value) {
         consumeValue(value);
     }
     
@@ -101,17 +161,17 @@ public class JsonModelBuilder implements JsonContentHandler {
     public void startArray() {
         JsonArray array = new JsonArray();
         consumeValue(array);
-        valueStack.push(array);
+        push(ARRAY, array);
     }
 
     public void startObject() {
-    	JsonObject object = new JsonObject();
+        JsonObject object = new JsonObject(shapes);
         consumeValue(object);
-        valueStack.push(object);
+        push(OBJECT, object);
     }
 
     public void startMember(String key) {
-        valueStack.push(key);
+        names[depth - 1] = key;
     }
     
 }
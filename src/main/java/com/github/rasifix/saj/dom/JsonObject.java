@@ -15,19 +15,92 @@
  */
 package com.github.rasifix.saj.dom;
 
+import java.math.BigDecimal;
 import java.util.AbstractMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import com.github.rasifix.saj.JsonContentHandler;
 
+/**
+ * A JSON object. Members are kept in insertion order in parallel arrays of
+ * names and values. Small objects are searched linearly, larger ones through
+ * an open addressing index. Objects created by the same {@link JsonModelBuilder}
+ * with the same member names in the same order share the array of names and
+ * the index, see {@link Shape}.
+ *
+ * @author rasifix
+ */
 public class JsonObject extends AbstractMap<String, Object> {
 	
-	private final Map<String, Object> members = new LinkedHashMap<String, Object>();
+	private static final String[] NO_KEYS = new String[0];
+	
+	private static final Object[] NO_VALUES = new Object[0];
+	
+	/**
+	 * The shape defining the keys, null if the keys are owned by this object.
+	 */
+	private Shape shape;
+	
+	private String[] keys;
+	
+	/**
+	 * Index of owned keys, null if not built yet or if the keys are shared.
+	 */
+	private int[] table;
+	
+	private Object[] values;
+	
+	private int size;
+	
+	private int modCount;
+	
+	/**
+	 * The document from which unresolved values are decoded, null unless
+	 * this object was created by a {@link LazyModelReader}.
+	 */
+	private LazyDocument document;
+	
+	/**
+	 * Index entries of the values, see {@link LazyDocument#UNRESOLVED}.
+	 */
+	private int[] entries;
+	
+	public JsonObject() {
+		this.keys = NO_KEYS;
+		this.values = NO_VALUES;
+	}
+	
+	JsonObject(Shape root) {
+		this.shape = root;
+		this.keys = root.keys;
+		this.values = NO_VALUES;
+	}
+	
+	JsonObject(Shape root, LazyDocument document, String[] names, int[] entries) {
+		this(root);
+		this.document = document;
+		this.entries = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			int index = indexOf(names[i]);
+			if (index < 0) {
+				append(names[i], LazyDocument.UNRESOLVED);
+				index = size - 1;
+			} else {
+				// the last of duplicate members wins, like with put
+				values[index] = LazyDocument.UNRESOLVED;
+			}
+			this.entries[index] = entries[i];
+		}
+	}
 
 	public Object get(String name) {
-		return members.get(name);
+		int index = indexOf(name);
+		return index < 0 ? null : value(index);
 	}
 	
 	public JsonArray getArray(String name) {
@@ -50,6 +123,10 @@ public class JsonObject extends AbstractMap<String, Object> {
 		return ((Number) get(name)).intValue();
 	}
 	
+	public long getLong(String name) {
+		return ((Number) get(name)).longValue();
+	}
+	
 	public double getDouble(String name) {
 		return ((Number) get(name)).doubleValue();
 	}
@@ -60,38 +137,274 @@ public class JsonObject extends AbstractMap<String, Object> {
 	
 	public void streamTo(JsonContentHandler handler) {
 		handler.startObject();
-		for (Entry<String, Object> entry : entrySet()) {
-			handler.startMember(entry.getKey());
-			if (entry.getValue() instanceof JsonObject) {
-				((JsonObject) entry.getValue()).streamTo(handler);
-			} else if (entry.getValue() instanceof JsonArray) {
-				((JsonArray) entry.getValue()).streamTo(handler);
-			} else if (entry.getValue() instanceof Boolean) {
-				handler.value((Boolean) entry.getValue());
-			} else if (entry.getValue() instanceof Integer) {
-				handler.value((Integer) entry.getValue());
-			} else if (entry.getValue() instanceof String) {
-				handler.value((String) entry.getValue());
-			} else if (entry.getValue() instanceof Double) {
-				handler.value((Double) entry.getValue());
-			} else if (entry.getValue() == null) {
+		for (int i = 0; i < size; i++) {
+			Object value = value(i);
+			handler.startMember(keys[i]);
+			if (value instanceof JsonObject) {
+				((JsonObject) value).streamTo(handler);
+			} else if (value instanceof JsonArray) {
+				((JsonArray) value).streamTo(handler);
+			} else if (value instanceof Boolean) {
+				handler.value((Boolean) value);
+			} else if (value instanceof Integer) {
+				handler.value((Integer) value);
+			} else if (value instanceof Long) {
+				handler.value((Long) value);
+			} else if (value instanceof BigDecimal) {
+				handler.value((BigDecimal) value);
+			} else if (value instanceof String) {
+				handler.value((String) value);
+			} else if (value instanceof Double) {
+				handler.value((Double) value);
+			} else if (value == null) {
 				handler.nullValue();
 			} else {
-				throw new RuntimeException("UUUUPS " + entry.getValue().getClass());
+				throw new RuntimeException("UUUUPS " + value.getClass());
 			}
 			handler.endMember();
 		}
 		handler.endObject();
 	}
 	
+	@Override
+	public Object get(Object key) {
+		int index = indexOf(key);
+		return index < 0 ? null : value(index);
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
 	@Override
 	public Object put(String key, Object value) {
-		return members.put(key, value);
+		if (key == null) {
+			throw new IllegalArgumentException("member name cannot be null");
+		}
+		int index = indexOf(key);
+		if (index >= 0) {
+			Object previous = value(index);
+			values[index] = value;
+			return previous;
+		}
+		append(key, value);
+		return null;
+	}
+	
+	private void append(String key, Object value) {
+		Shape next = shape != null ? shape.add(key) : null;
+		if (next != null) {
+			shape = next;
+			keys = next.keys;
+		} else {
+			if (shape != null) {
+				ownKeys();
+			}
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, grow(size));
+			}
+			keys[size] = key;
+			if (table != null) {
+				if (2 * (size + 1) > table.length) {
+					table = null;
+				} else {
+					Shape.insert(table, key, size);
+				}
+			}
+		}
+		if (size == values.length) {
+			values = Arrays.copyOf(values, Math.max(keys.length, grow(size)));
+		}
+		values[size++] = value;
+		modCount++;
+	}
+	
+	@Override
+	public Object remove(Object key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		Object previous = value(index);
+		removeAt(index);
+		return previous;
+	}
+	
+	@Override
+	public void clear() {
+		shape = null;
+		keys = NO_KEYS;
+		values = NO_VALUES;
+		table = null;
+		size = 0;
+		document = null;
+		entries = null;
+		modCount++;
 	}
 
 	@Override
 	public Set<Entry<String, Object>> entrySet() {
-		return members.entrySet();
+		return new EntrySet();
+	}
+	
+	private Object value(int index) {
+		Object value = values[index];
+		if (value == LazyDocument.UNRESOLVED) {
+			value = document.value(entries[index]);
+			values[index] = value;
+		}
+		return value;
+	}
+	
+	private int indexOf(Object key) {
+		if (key == null) {
+			return -1;
+		}
+		if (shape != null) {
+			return Shape.indexOf(keys, size, shape.table, key);
+		}
+		if (table == null && size > Shape.LINEAR_SCAN_LIMIT) {
+			table = Shape.buildTable(keys, size);
+		}
+		return Shape.indexOf(keys, size, table, key);
+	}
+	
+	private void removeAt(int index) {
+		if (shape != null) {
+			ownKeys();
+		}
+		int moved = size - index - 1;
+		System.arraycopy(keys, index + 1, keys, index, moved);
+		System.arraycopy(values, index + 1, values, index, moved);
+		if (entries != null && index < entries.length - 1) {
+			System.arraycopy(entries, index + 1, entries, index, Math.min(moved, entries.length - index - 1));
+		}
+		size--;
+		keys[size] = null;
+		values[size] = null;
+		table = null;
+		modCount++;
+	}
+	
+	/**
+	 * Stops sharing the keys of the shape, so that they can be modified.
+	 */
+	private void ownKeys() {
+		keys = Arrays.copyOf(keys, grow(size));
+		shape = null;
+		table = null;
+	}
+	
+	private static int grow(int capacity) {
+		return capacity + (capacity >> 1) + 1;
+	}
+	
+	private class EntrySet extends AbstractSet<Entry<String, Object>> {
+		
+		@Override
+		public int size() {
+			return size;
+		}
+		
+		@Override
+		public Iterator<Entry<String, Object>> iterator() {
+			return new EntryIterator();
+		}
+		
+	}
+	
+	private class EntryIterator implements Iterator<Entry<String, Object>> {
+		
+		private int next;
+		
+		private int last = -1;
+		
+		private int expectedModCount = modCount;
+		
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+		
+		@Override
+		public Entry<String, Object> next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= size) {
+				throw new NoSuchElementException();
+			}
+			last = next++;
+			return new MemberEntry(last);
+		}
+		
+		@Override
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			removeAt(last);
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+		
+	}
+	
+	private class MemberEntry implements Entry<String, Object> {
+		
+		private final int index;
+		
+		MemberEntry(int index) {
+			this.index = index;
+		}
+		
+		@Override
+		public String getKey() {
+			return keys[index];
+		}
+		
+		@Override
+		public Object getValue() {
+			return value(index);
+		}
+		
+		@Override
+		public Object setValue(Object value) {
+			Object previous = value(index);
+			values[index] = value;
+			return previous;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Entry)) {
+				return false;
+			}
+			Entry<?, ?> other = (Entry<?, ?>) obj;
+			return getKey().equals(other.getKey())
+					&& (getValue() == null ? other.getValue() == null : getValue().equals(other.getValue()));
+		}
+		
+		@Override
+		public int hashCode() {
+			return getKey().hashCode() ^ (getValue() == null ? 0 : getValue().hashCode());
+		}
+		
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+		
 	}
 	
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.dom;
+
+import com.github.rasifix.saj.internal.StructuralIndex;
+
+/**
+ * Materializes the values of a {@link StructuralIndex} for the lazy model
+ * built by {@link LazyModelReader}.
+ *
+ * @author rasifix
+ */
+final class LazyDocument {
+
+	/**
+	 * Marks a value of a lazy {@link JsonObject} or {@link JsonArray} that
+	 * has not been decoded yet.
+	 */
+	static final Object UNRESOLVED = new Object();
+
+	private final StructuralIndex index;
+
+	private final boolean useBigDecimal;
+
+	private final Shape shapes = new Shape();
+
+	LazyDocument(StructuralIndex index, boolean useBigDecimal) {
+		this.index = index;
+		this.useBigDecimal = useBigDecimal;
+	}
+
+	/**
+	 * Decodes the value of the given entry. Objects and arrays are created
+	 * with unresolved values.
+	 */
+	Object value(int entry) {
+		switch (index.kind(entry)) {
+		case StructuralIndex.OBJECT:
+			return object(entry);
+		case StructuralIndex.ARRAY:
+			return array(entry);
+		case StructuralIndex.STRING:
+			return index.string(entry);
+		case StructuralIndex.NUMBER:
+			return index.number(entry, useBigDecimal);
+		case StructuralIndex.TRUE:
+			return Boolean.TRUE;
+		case StructuralIndex.FALSE:
+			return Boolean.FALSE;
+		case StructuralIndex.NULL:
+			return null;
+		default:
+			throw new IllegalStateException("unexpected entry kind " + index.kind(entry));
+		}
+	}
+
+	private JsonObject object(int entry) {
+		final int end = index.next(entry);
+		int count = 0;
+		for (int e = entry + 1; e < end; e = index.next(e + 1)) {
+			count++;
+		}
+		String[] names = new String[count];
+		int[] entries = new int[count];
+		int i = 0;
+		for (int e = entry + 1; e < end; e = index.next(e + 1)) {
+			names[i] = index.name(e);
+			entries[i] = e + 1;
+			i++;
+		}
+		return new JsonObject(shapes, this, names, entries);
+	}
+
+	private JsonArray array(int entry) {
+		final int end = index.next(entry);
+		int count = 0;
+		for (int e = entry + 1; e < end; e = index.next(e)) {
+			count++;
+		}
+		int[] entries = new int[count];
+		int i = 0;
+		for (int e = entry + 1; e < end; e = index.next(e)) {
+			entries[i++] = e;
+		}
+		return new JsonArray(this, entries);
+	}
+
+}
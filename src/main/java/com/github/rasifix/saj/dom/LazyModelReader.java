@@ -0,0 +1,95 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.dom;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import com.github.rasifix.saj.internal.StructuralIndex;
+
+/**
+ * Reads JSON into a lazily materialized {@link JsonObject} / {@link JsonArray}
+ * model. The whole input is kept in memory and validated once, recording
+ * only the kind and position of every value. Values are decoded when they
+ * are first accessed and then cached, nested objects and arrays are only
+ * created when they are accessed. Consumers that read a few members of
+ * large documents thus avoid creating most of the model.
+ * <p>
+ * Every object and array of the model keeps a reference to the input and
+ * its index for as long as it lives, even once all its values have been
+ * accessed. Only clearing an object or inserting an element into an array
+ * before its end releases them. Copy the values into a new model to
+ * release the input. The model is not thread-safe, not even for reading.
+ * 
+ * @author rasifix
+ */
+public class LazyModelReader {
+	
+	private boolean useBigDecimal;
+	
+	/**
+	 * @param useBigDecimal true to decode non-integral numbers as BigDecimal
+	 *        instead of Double
+	 */
+	public void setUseBigDecimal(boolean useBigDecimal) {
+		this.useBigDecimal = useBigDecimal;
+	}
+	
+	/**
+	 * @param json the JSON expression
+	 * @return a JsonObject, JsonArray, String, Number, Boolean or null
+	 * @throws com.github.rasifix.saj.JsonParseException if the input is not well-formed JSON
+	 */
+	public Object parse(String json) {
+		char[] input = json.toCharArray();
+		return parse(input, 0, input.length);
+	}
+	
+	/**
+	 * @param json the array containing the JSON expression, it must not be
+	 *        modified as long as the model is in use
+	 * @param offset the start of the JSON expression
+	 * @param length the length of the JSON expression
+	 * @return a JsonObject, JsonArray, String, Number, Boolean or null
+	 * @throws com.github.rasifix.saj.JsonParseException if the input is not well-formed JSON
+	 */
+	public Object parse(char[] json, int offset, int length) {
+		StructuralIndex index = StructuralIndex.build(json, offset, length);
+		return new LazyDocument(index, useBigDecimal).value(0);
+	}
+	
+	/**
+	 * Reads the whole input and parses it. The reader is not closed.
+	 * 
+	 * @param reader the reader from which to parse
+	 * @return a JsonObject, JsonArray, String, Number, Boolean or null
+	 * @throws IOException if reading fails
+	 */
+	public Object parse(Reader reader) throws IOException {
+		char[] input = new char[8192];
+		int length = 0;
+		int read;
+		while ((read = reader.read(input, length, input.length - length)) != -1) {
+			length += read;
+			if (length == input.length) {
+				input = Arrays.copyOf(input, 2 * length);
+			}
+		}
+		return parse(input, 0, length);
+	}
+	
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.dom;
+
+/**
+ * Immutable sequence of member names shared by all {@link JsonObject}s whose
+ * members were added in the same order. Shapes form a tree: each shape knows
+ * the shapes that result from adding one more member. The tree is bounded,
+ * shapes keep at most {@link #MAX_TRANSITIONS} successors and have at most
+ * {@link #MAX_SIZE} members; objects that do not fit manage their names
+ * themselves.
+ * <p>
+ * Shapes may be shared between threads. Successors are cached without
+ * synchronization, a lost update only means that a shape is not shared.
+ *
+ * @author rasifix
+ */
+final class Shape {
+
+	/**
+	 * Objects up to this size are searched linearly, larger ones by hash.
+	 */
+	static final int LINEAR_SCAN_LIMIT = 8;
+
+	static final int MAX_SIZE = 64;
+
+	private static final int MAX_TRANSITIONS = 8;
+
+	final String[] keys;
+
+	/**
+	 * Open addressing index of the keys, null for small shapes.
+	 */
+	final int[] table;
+
+	private final Shape[] transitions = new Shape[MAX_TRANSITIONS];
+
+	private int transitionCount;
+
+	Shape() {
+		this(new String[0]);
+	}
+
+	private Shape(String[] keys) {
+		this.keys = keys;
+		this.table = keys.length > LINEAR_SCAN_LIMIT ? buildTable(keys, keys.length) : null;
+	}
+
+	/**
+	 * @param key the name of the added member
+	 * @return the shape with the given name appended, null if the shape
+	 *         would become too large to share or this shape has no room
+	 *         for another successor
+	 */
+	Shape add(String key) {
+		final int size = keys.length;
+		final int count = Math.min(transitionCount, MAX_TRANSITIONS);
+		for (int i = 0; i < count; i++) {
+			Shape shape = transitions[i];
+			if (shape != null && equal(shape.keys[size], key)) {
+				return shape;
+			}
+		}
+		if (size == MAX_SIZE || count == MAX_TRANSITIONS) {
+			// a shape that is not cached would only be used by one object
+			return null;
+		}
+		String[] newKeys = new String[size + 1];
+		System.arraycopy(keys, 0, newKeys, 0, size);
+		newKeys[size] = key;
+		Shape shape = new Shape(newKeys);
+		transitions[count] = shape;
+		transitionCount = count + 1;
+		return shape;
+	}
+
+	/**
+	 * Finds a key in the first <code>size</code> entries of <code>keys</code>.
+	 *
+	 * @param table the index built by {@link #buildTable}, null to scan linearly
+	 * @return the index of the key or -1
+	 */
+	static int indexOf(String[] keys, int size, int[] table, Object key) {
+		if (table == null) {
+			// member names are usually interned by the reader, try identity first
+			for (int i = 0; i < size; i++) {
+				if (keys[i] == key) {
+					return i;
+				}
+			}
+			for (int i = 0; i < size; i++) {
+				if (keys[i].equals(key)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		final int mask = table.length - 1;
+		for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+			int index = table[slot] - 1;
+			if (index < 0) {
+				return -1;
+			}
+			if (equal(keys[index], key)) {
+				return index;
+			}
+		}
+	}
+
+	/**
+	 * Builds an open addressing index of the first <code>size</code> keys
+	 * that is at most half full. Slots contain the index of the key plus one.
+	 */
+	static int[] buildTable(String[] keys, int size) {
+		int capacity = Integer.highestOneBit(Math.max(size, 1)) << 2;
+		int[] table = new int[capacity];
+		for (int i = 0; i < size; i++) {
+			insert(table, keys[i], i);
+		}
+		return table;
+	}
+
+	/**
+	 * Adds a key to an index built by {@link #buildTable}.
+	 */
+	static void insert(int[] table, String key, int index) {
+		final int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = index + 1;
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean equal(String a, Object b) {
+		return a == b || a.equals(b);
+	}
+
+}
@@ -0,0 +1,677 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.github.rasifix.saj.JsonCharactersHandler;
+import com.github.rasifix.saj.JsonContentHandler;
+import com.github.rasifix.saj.JsonParseException;
+import com.github.rasifix.saj.JsonRecordHandler;
+
+/**
+ * Base class of the hand-written JSON parsers. Subclasses implement the
+ * tokenizer on top of their input buffer, this class implements the grammar
+ * as a state machine that invokes the {@link JsonContentHandler}. Nesting
+ * is tracked on an explicit stack, the parser never recurses. As all state
+ * is kept in fields, parsing can be suspended whenever the tokenizer runs
+ * out of input and resumed once more input is available.
+ *
+ * @author rasifix
+ */
+public abstract class AbstractParser {
+
+	protected static final int EOF = 0;
+
+	protected static final int BEGIN_OBJECT = 1;
+
+	protected static final int END_OBJECT = 2;
+
+	protected static final int BEGIN_ARRAY = 3;
+
+	protected static final int END_ARRAY = 4;
+
+	protected static final int COLON = 5;
+
+	protected static final int COMMA = 6;
+
+	protected static final int STRING = 7;
+
+	protected static final int NUMBER = 8;
+
+	protected static final int TRUE = 9;
+
+	protected static final int FALSE = 10;
+
+	protected static final int NULL = 11;
+
+	/**
+	 * Returned by {@link #nextToken()} if the next token is not yet available
+	 * completely and more input has to be fed to the parser.
+	 */
+	protected static final int NEED_INPUT = 12;
+
+	private static final String[] TOKEN_NAMES = {
+		"end of input", "'{'", "'}'", "'['", "']'", "':'", "','", "string", "number", "true", "false", "null", "more input"
+	};
+
+	// parser states
+	private static final int VALUE = 0;
+
+	private static final int ARRAY_START = 1;
+
+	private static final int ARRAY_NEXT = 2;
+
+	private static final int OBJECT_START = 3;
+
+	private static final int OBJECT_NEXT = 4;
+
+	private static final int MEMBER_NAME = 5;
+
+	private static final int MEMBER_COLON = 6;
+
+	private static final int DONE = 7;
+
+	private static final int SKIP = 8;
+
+	// stack entries
+	private static final byte IN_OBJECT = 1;
+
+	private static final byte IN_ARRAY = 2;
+
+	protected final JsonContentHandler handler;
+
+	/**
+	 * The handler if it accepts char ranges, null otherwise.
+	 */
+	private final JsonCharactersHandler charactersHandler;
+
+	/**
+	 * The handler if it is notified of records, null otherwise.
+	 */
+	private final JsonRecordHandler recordHandler;
+
+	/**
+	 * The handler if only the structure is scanned, null otherwise.
+	 */
+	private final ScanHandler scanHandler;
+
+	/**
+	 * Text of the last {@link #STRING} (without quotes) or {@link #NUMBER} token.
+	 */
+	protected char[] text;
+
+	protected int textOffset;
+
+	protected int textLength;
+
+	private byte[] stack = new byte[32];
+
+	private int depth;
+
+	private int state;
+
+	private boolean stopped;
+
+	/**
+	 * Position from which on parsing of the top-level array ends at the
+	 * next comma between its elements, -1 to parse the whole document.
+	 */
+	private long splitPosition = -1;
+
+	/**
+	 * Position of the comma at which parsing ended, -1 if it did not end at
+	 * a split.
+	 */
+	private long split = -1;
+
+	/**
+	 * True while parsing elements, which ends between two elements when the
+	 * thread is interrupted.
+	 */
+	private boolean elements;
+
+	private boolean useBigDecimal;
+
+	private boolean records;
+
+	/**
+	 * Table interning member names, created when the first name is interned.
+	 */
+	private SymbolTable symbols;
+
+	private boolean internNames = true;
+
+	private PathFilter includePaths;
+
+	/**
+	 * Node of the include paths for the root value while parsing, null to
+	 * include everything.
+	 */
+	private PathFilter.Node filter;
+
+	/**
+	 * Node of the include paths for each open container.
+	 */
+	private PathFilter.Node[] nodes = new PathFilter.Node[32];
+
+	/**
+	 * Index of the next element for each open array.
+	 */
+	private int[] indexes = new int[32];
+
+	/**
+	 * Node of the current member, null if the member is excluded.
+	 */
+	private PathFilter.Node memberNode;
+
+	/**
+	 * Node of the value being reported.
+	 */
+	private PathFilter.Node valueNode;
+
+	/**
+	 * Name of an included member, reported once it is known that its value
+	 * is included as well.
+	 */
+	private String pendingName;
+
+	private char[] pendingChars = new char[32];
+
+	private int pendingLength;
+
+	/**
+	 * Nesting depth while skipping an excluded container, see {@link #skipContainer()}.
+	 */
+	protected int skipDepth;
+
+	protected boolean skipInString;
+
+	protected boolean skipEscape;
+
+	protected AbstractParser(JsonContentHandler handler) {
+		if (handler == null) {
+			throw new IllegalArgumentException("handler cannot be null");
+		}
+		this.handler = handler;
+		this.charactersHandler = handler instanceof JsonCharactersHandler ? (JsonCharactersHandler) handler : null;
+		this.recordHandler = handler instanceof JsonRecordHandler ? (JsonRecordHandler) handler : null;
+		this.scanHandler = handler instanceof ScanHandler ? (ScanHandler) handler : null;
+	}
+
+	/**
+	 * @param useBigDecimal true to report non-integral numbers as BigDecimal
+	 *        instead of double
+	 */
+	public void setUseBigDecimal(boolean useBigDecimal) {
+		this.useBigDecimal = useBigDecimal;
+	}
+
+	/**
+	 * Selects whether a sequence of values is parsed instead of a single
+	 * value, e.g. newline-delimited JSON. Each value is a record, whose
+	 * boundaries are reported to a {@link JsonRecordHandler}. The values
+	 * only have to be separated where the tokens would run together.
+	 *
+	 * Takes effect when parsing the next document.
+	 *
+	 * @param records true to parse a sequence of values
+	 */
+	public void setRecords(boolean records) {
+		this.records = records;
+	}
+
+	/**
+	 * Stops parsing after the current event. Can be invoked by the handler,
+	 * the parser then returns without reading the rest of the input.
+	 */
+	public void stop() {
+		this.stopped = true;
+	}
+
+	/**
+	 * @return true if parsing of the current document was stopped
+	 */
+	protected final boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Sets the table used to intern member names reported as Strings.
+	 *
+	 * @param symbols the table, null to create a new String per member name
+	 */
+	public void setSymbolTable(SymbolTable symbols) {
+		this.symbols = symbols;
+		this.internNames = symbols != null;
+	}
+
+	/**
+	 * @return true if strings and numbers are only checked, not decoded,
+	 *         because the handler is a {@link ScanHandler}
+	 */
+	protected final boolean isScanOnly() {
+		return scanHandler != null;
+	}
+
+	/**
+	 * Restricts the reported events to the given include paths. Excluded
+	 * objects and arrays are skipped by counting brackets, their content is
+	 * not tokenized and only checked for balanced brackets.
+	 *
+	 * Takes effect when parsing the next document.
+	 *
+	 * @param includePaths the include paths, null to report everything
+	 */
+	public void setFilter(PathFilter includePaths) {
+		this.includePaths = includePaths;
+	}
+
+	/**
+	 * Reads the next token. For {@link #STRING} and {@link #NUMBER} tokens
+	 * the text of the token is made available in {@link #text}.
+	 *
+	 * @return the token type
+	 * @throws IOException if reading the input fails
+	 */
+	protected abstract int nextToken() throws IOException;
+
+	/**
+	 * @return the offset of the current token in the input
+	 */
+	protected abstract long position();
+
+	/**
+	 * Skips input until the container whose opening bracket was the last
+	 * token is closed. Strings are respected, brackets are not matched by type.
+	 * Nesting is tracked in {@link #skipDepth}, {@link #skipInString} and
+	 * {@link #skipEscape}, so that skipping can be resumed.
+	 *
+	 * @return true if the container was skipped, false if more input has
+	 *         to be fed to the parser
+	 * @throws IOException if reading the input fails
+	 */
+	protected abstract boolean skipContainer() throws IOException;
+
+	/**
+	 * Parses exactly one JSON value, or the records if enabled, followed by
+	 * the end of the input.
+	 *
+	 * @throws IOException if reading the input fails
+	 */
+	protected final void parseValue() throws IOException {
+		start();
+		resume();
+	}
+
+	/**
+	 * Parses a run of elements of a top-level array. The handler receives
+	 * them as an array of their own: if parsing does not start at the
+	 * opening bracket, the start of the array is reported before the first
+	 * element, and if it ends at a split, the end of the array is reported
+	 * after the last element.
+	 *
+	 * @param first true if the input starts with the array, false if it
+	 *        starts with an element following a comma
+	 * @param splitPosition the position from which on parsing ends at the
+	 *        next comma between top-level elements, -1 to parse to the end
+	 * @return the position of the comma at which parsing ended, -1 if the
+	 *         end of the array and of the input was reached
+	 * @throws IOException if reading the input fails
+	 * @throws IllegalStateException if include paths are set, records are
+	 *         parsed or the thread is interrupted
+	 */
+	protected final long parseElements(boolean first, long splitPosition) throws IOException {
+		if (includePaths != null) {
+			throw new IllegalStateException("include paths are not supported when parsing elements");
+		}
+		if (records) {
+			throw new IllegalStateException("records are not supported when parsing elements");
+		}
+		start();
+		if (!first) {
+			push(IN_ARRAY);
+			handler.startArray();
+		}
+		this.splitPosition = splitPosition;
+		this.elements = true;
+		resume();
+		return split;
+	}
+
+	/**
+	 * Resets the parser state to expect a single JSON value.
+	 */
+	protected final void start() {
+		state = VALUE;
+		depth = 0;
+		stopped = false;
+		splitPosition = -1;
+		split = -1;
+		elements = false;
+		filter = includePaths != null ? includePaths.root() : null;
+	}
+
+	/**
+	 * Continues parsing from the current state.
+	 *
+	 * @return true if the end of the input was reached or parsing was
+	 *         stopped, false if the tokenizer needs more input
+	 * @throws IOException if reading the input fails
+	 */
+	protected final boolean resume() throws IOException {
+		for (;;) {
+			if (stopped) {
+				return true;
+			}
+			if (state == SKIP) {
+				if (!skipContainer()) {
+					return false;
+				}
+				afterSkippedValue();
+				continue;
+			}
+			int token = nextToken();
+			if (token == NEED_INPUT) {
+				return false;
+			}
+			switch (state) {
+			case VALUE:
+				if (depth == 0 && records) {
+					if (token == EOF) {
+						return true;
+					}
+					if (recordHandler != null) {
+						recordHandler.startRecord();
+					}
+				}
+				value(token);
+				break;
+			case ARRAY_START:
+				if (token == END_ARRAY) {
+					endArray();
+				} else {
+					value(token);
+				}
+				break;
+			case ARRAY_NEXT:
+				if (token == COMMA) {
+					if (depth == 1 && splitPosition >= 0 && position() >= splitPosition) {
+						split = position();
+						endArray();
+						return true;
+					}
+					if (depth == 1 && elements && Thread.currentThread().isInterrupted()) {
+						throw new IllegalStateException("interrupted while parsing elements");
+					}
+					state = VALUE;
+				} else if (token == END_ARRAY) {
+					endArray();
+				} else {
+					throw unexpected(token);
+				}
+				break;
+			case OBJECT_START:
+				if (token == END_OBJECT) {
+					endObject();
+				} else {
+					memberName(token);
+				}
+				break;
+			case OBJECT_NEXT:
+				if (token == COMMA) {
+					state = MEMBER_NAME;
+				} else if (token == END_OBJECT) {
+					endObject();
+				} else {
+					throw unexpected(token);
+				}
+				break;
+			case MEMBER_NAME:
+				memberName(token);
+				break;
+			case MEMBER_COLON:
+				if (token != COLON) {
+					throw unexpected(token);
+				}
+				state = VALUE;
+				break;
+			case DONE:
+				if (token != EOF) {
+					throw unexpected(token);
+				}
+				return true;
+			default:
+				throw new IllegalStateException("unknown parser state " + state);
+			}
+		}
+	}
+
+	private void value(int token) {
+		if (filter != null && !include(token)) {
+			skip(token);
+			return;
+		}
+		switch (token) {
+		case BEGIN_OBJECT:
+			push(IN_OBJECT);
+			handler.startObject();
+			state = OBJECT_START;
+			return;
+		case BEGIN_ARRAY:
+			push(IN_ARRAY);
+			handler.startArray();
+			state = ARRAY_START;
+			return;
+		case STRING:
+			if (scanHandler != null) {
+				scanHandler.string();
+			} else if (charactersHandler != null) {
+				charactersHandler.value(text, textOffset, textLength);
+			} else {
+				handler.value(new String(text, textOffset, textLength));
+			}
+			break;
+		case NUMBER:
+			if (scanHandler != null) {
+				if (!NumberParser.isValid(text, textOffset, textLength)) {
+					throw syntaxError("invalid number");
+				}
+				scanHandler.number();
+			} else if (!NumberParser.parse(text, textOffset, textLength, useBigDecimal, handler)) {
+				throw syntaxError("invalid number");
+			}
+			break;
+		case TRUE:
+			handler.value(true);
+			break;
+		case FALSE:
+			handler.value(false);
+			break;
+		case NULL:
+			handler.nullValue();
+			break;
+		default:
+			throw unexpected(token);
+		}
+		afterValue();
+	}
+
+	private void memberName(int token) {
+		if (token != STRING) {
+			throw unexpected(token);
+		}
+		if (filter != null) {
+			memberNode = nodes[depth - 1].member(text, textOffset, textLength);
+			if (memberNode != null) {
+				keepMemberName();
+			}
+		} else if (scanHandler != null) {
+			scanHandler.memberName();
+		} else if (charactersHandler != null) {
+			charactersHandler.startMember(text, textOffset, textLength);
+		} else {
+			handler.startMember(nameString());
+		}
+		state = MEMBER_COLON;
+	}
+
+	/**
+	 * @return the member name in {@link #text}, interned if enabled
+	 */
+	private String nameString() {
+		if (!internNames) {
+			return new String(text, textOffset, textLength);
+		}
+		if (symbols == null) {
+			symbols = new SymbolTable();
+		}
+		return symbols.lookup(text, textOffset, textLength);
+	}
+
+	/**
+	 * Determines whether the value starting with the given token is included
+	 * and reports the name of the member if so. Scalars are included only if
+	 * their path is selected, containers if it leads to a selected path.
+	 */
+	private boolean include(int token) {
+		PathFilter.Node node;
+		if (depth == 0) {
+			node = filter;
+		} else if (stack[depth - 1] == IN_ARRAY) {
+			node = nodes[depth - 1].element(indexes[depth - 1]++);
+		} else {
+			node = memberNode;
+		}
+		if (node == null || !node.isSelected() && token != BEGIN_OBJECT && token != BEGIN_ARRAY) {
+			return false;
+		}
+		valueNode = node;
+		if (depth > 0 && stack[depth - 1] == IN_OBJECT) {
+			if (charactersHandler != null) {
+				charactersHandler.startMember(pendingChars, 0, pendingLength);
+			} else {
+				handler.startMember(pendingName);
+			}
+		}
+		return true;
+	}
+
+	private void keepMemberName() {
+		if (charactersHandler != null) {
+			if (pendingChars.length < textLength) {
+				pendingChars = new char[Math.max(textLength, 2 * pendingChars.length)];
+			}
+			System.arraycopy(text, textOffset, pendingChars, 0, textLength);
+			pendingLength = textLength;
+		} else {
+			pendingName = nameString();
+		}
+	}
+
+	private void skip(int token) {
+		switch (token) {
+		case BEGIN_OBJECT:
+		case BEGIN_ARRAY:
+			skipDepth = 1;
+			skipInString = false;
+			skipEscape = false;
+			state = SKIP;
+			break;
+		case STRING:
+		case NUMBER:
+		case TRUE:
+		case FALSE:
+		case NULL:
+			afterSkippedValue();
+			break;
+		default:
+			throw unexpected(token);
+		}
+	}
+
+	private void afterSkippedValue() {
+		if (depth == 0) {
+			endRecord();
+		} else if (stack[depth - 1] == IN_OBJECT) {
+			// the member was not reported, so neither is its end
+			state = OBJECT_NEXT;
+		} else {
+			state = ARRAY_NEXT;
+		}
+	}
+
+	private void endObject() {
+		depth--;
+		handler.endObject();
+		afterValue();
+	}
+
+	private void endArray() {
+		depth--;
+		handler.endArray();
+		afterValue();
+	}
+
+	private void afterValue() {
+		if (depth == 0) {
+			endRecord();
+		} else if (stack[depth - 1] == IN_OBJECT) {
+			handler.endMember();
+			state = OBJECT_NEXT;
+		} else {
+			state = ARRAY_NEXT;
+		}
+	}
+
+	private void endRecord() {
+		if (!records) {
+			state = DONE;
+			return;
+		}
+		if (recordHandler != null) {
+			recordHandler.endRecord();
+		}
+		state = VALUE;
+	}
+
+	private void push(byte context) {
+		if (depth == stack.length) {
+			byte[] newStack = new byte[depth * 2];
+			System.arraycopy(stack, 0, newStack, 0, depth);
+			stack = newStack;
+		}
+		if (filter != null) {
+			if (depth == nodes.length) {
+				nodes = Arrays.copyOf(nodes, depth * 2);
+				indexes = Arrays.copyOf(indexes, depth * 2);
+			}
+			nodes[depth] = valueNode;
+			indexes[depth] = 0;
+		}
+		stack[depth++] = context;
+	}
+
+	private JsonParseException unexpected(int token) {
+		return syntaxError("unexpected " + TOKEN_NAMES[token]);
+	}
+
+	protected final JsonParseException syntaxError(String message) {
+		return new JsonParseException(message + " at position " + position());
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Output to a {@link Writer}. The chars are collected in a buffer of fixed
+ * size, which is written to the Writer whenever it is full.
+ *
+ * @author rasifix
+ */
+public final class CharOutput extends JsonOutput {
+
+	private Writer writer;
+
+	private final char[] buffer;
+
+	private int pos;
+
+	/**
+	 * @param writer the writer to write to
+	 * @param bufferSize the size of the buffer in chars
+	 */
+	public CharOutput(Writer writer, int bufferSize) {
+		if (writer == null) {
+			throw new IllegalArgumentException("writer cannot be null");
+		}
+		if (bufferSize < 16) {
+			throw new IllegalArgumentException("buffer size must be at least 16");
+		}
+		this.writer = writer;
+		this.buffer = new char[bufferSize];
+	}
+
+	/**
+	 * Continues with another writer, keeping the buffer. Call
+	 * {@link #drain()} first so that nothing is left in the buffer.
+	 *
+	 * @param writer the writer to write to from now on
+	 */
+	public void setWriter(Writer writer) {
+		if (writer == null) {
+			throw new IllegalArgumentException("writer cannot be null");
+		}
+		this.writer = writer;
+	}
+
+	@Override
+	public void writeAscii(char c) throws IOException {
+		if (pos == buffer.length) {
+			flushBuffer();
+		}
+		buffer[pos++] = c;
+	}
+
+	@Override
+	public void writeAscii(char[] ch, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (pos == buffer.length) {
+				flushBuffer();
+			}
+			int n = Math.min(length, buffer.length - pos);
+			System.arraycopy(ch, offset, buffer, pos, n);
+			pos += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	@Override
+	public void write(String s, int start, int end) throws IOException {
+		while (start < end) {
+			if (pos == buffer.length) {
+				flushBuffer();
+			}
+			int n = Math.min(end - start, buffer.length - pos);
+			s.getChars(start, start + n, buffer, pos);
+			pos += n;
+			start += n;
+		}
+	}
+
+	@Override
+	public void writeEncoded(char[] chars, byte[] utf8) throws IOException {
+		writeAscii(chars, 0, chars.length);
+	}
+
+	@Override
+	public boolean isBuffered() {
+		return pos > 0;
+	}
+
+	@Override
+	public void drain() throws IOException {
+		if (pos > 0) {
+			flushBuffer();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+		writer.close();
+	}
+
+	private void flushBuffer() throws IOException {
+		writer.write(buffer, 0, pos);
+		pos = 0;
+	}
+
+}
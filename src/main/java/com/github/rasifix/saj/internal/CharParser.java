@@ -0,0 +1,421 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import com.github.rasifix.saj.JsonContentHandler;
+
+/**
+ * Parser that tokenizes characters. The input is read through a window of
+ * fixed size that is reused across invocations, so memory use is bounded by
+ * the window size (plus the largest single token) and the nesting depth,
+ * not by the size of the document. Tokens are never materialized: strings
+ * and numbers are passed to the grammar as ranges of the window.
+ *
+ * @author rasifix
+ */
+public class CharParser extends AbstractParser {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private static final char[] TRUE_CHARS = "true".toCharArray();
+
+	private static final char[] FALSE_CHARS = "false".toCharArray();
+
+	private static final char[] NULL_CHARS = "null".toCharArray();
+
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	/**
+	 * The window, allocated when the first Reader is parsed.
+	 */
+	private char[] buffer;
+
+	/**
+	 * Receives the contents of strings containing escape sequences.
+	 */
+	private char[] chars = new char[256];
+
+	private Reader reader;
+
+	/**
+	 * Number of chars discarded from the window so far.
+	 */
+	private long offset;
+
+	private int pos;
+
+	private int limit;
+
+	private int tokenStart;
+
+	public CharParser(JsonContentHandler handler) {
+		super(handler);
+	}
+
+	/**
+	 * Sets the size of the window through which the input is read. The window
+	 * grows temporarily if a single token does not fit into it.
+	 *
+	 * @param bufferSize the size of the window in chars
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize < 16) {
+			throw new IllegalArgumentException("buffer size must be at least 16");
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Parses the JSON value in the given String.
+	 *
+	 * @param json the JSON expression
+	 */
+	public void parse(String json) {
+		try {
+			parse(new StringReader(json));
+		} catch (IOException e) {
+			throw new IllegalStateException("unexpected I/O exception on in-memory input", e);
+		}
+	}
+
+	/**
+	 * Parses the JSON value read from the given Reader. The reader is not closed.
+	 *
+	 * @param reader the reader from which to parse
+	 * @throws IOException if reading fails
+	 */
+	public void parse(Reader reader) throws IOException {
+		if (buffer == null || buffer.length != bufferSize) {
+			buffer = new char[bufferSize];
+		}
+		this.reader = reader;
+		this.offset = 0;
+		this.pos = 0;
+		this.limit = 0;
+		this.tokenStart = 0;
+		try {
+			parseValue();
+		} finally {
+			this.reader = null;
+		}
+	}
+
+	/**
+	 * Parses the JSON value in the given range of a char array. The array is
+	 * used as the window, so {@link #position()} reports positions in the
+	 * array.
+	 *
+	 * @param input the array containing the JSON expression
+	 * @param start the start of the JSON expression
+	 * @param length the length of the JSON expression
+	 */
+	public void parse(char[] input, int start, int length) {
+		char[] window = buffer;
+		use(input, start, length);
+		try {
+			parseValue();
+		} catch (IOException e) {
+			throw new IllegalStateException("unexpected I/O exception on in-memory input", e);
+		} finally {
+			this.buffer = window;
+		}
+	}
+
+	/**
+	 * Parses a run of elements of the top-level array in the given range of
+	 * a char array, see {@link AbstractParser#parseElements(boolean, long)}.
+	 * The range must extend to the end of the array.
+	 *
+	 * @param input the array containing the JSON expression
+	 * @param start the start of the array or of the first element
+	 * @param length the length up to the end of the JSON expression
+	 * @param first true if the range starts with the array, false if it
+	 *        starts with an element following a comma
+	 * @param splitPosition the position in the array from which on parsing
+	 *        ends at the next comma between elements, -1 to parse to the end
+	 * @return the position of the comma at which parsing ended, -1 if the
+	 *         end of the array was reached
+	 */
+	public long parseElements(char[] input, int start, int length, boolean first, long splitPosition) {
+		char[] window = buffer;
+		use(input, start, length);
+		try {
+			return parseElements(first, splitPosition);
+		} catch (IOException e) {
+			throw new IllegalStateException("unexpected I/O exception on in-memory input", e);
+		} finally {
+			this.buffer = window;
+		}
+	}
+
+	private void use(char[] input, int start, int length) {
+		this.buffer = input;
+		this.reader = null;
+		this.offset = 0;
+		this.pos = start;
+		this.limit = start + length;
+		this.tokenStart = start;
+	}
+
+	/**
+	 * Reads more input into the window. Everything before the start of the
+	 * current token is discarded, if the token already fills the whole window
+	 * the window is enlarged.
+	 *
+	 * @return false if the end of the input is reached
+	 * @throws IOException if reading fails
+	 */
+	private boolean fill() throws IOException {
+		if (reader == null) {
+			return false;
+		}
+		int keep = limit - tokenStart;
+		if (tokenStart > 0) {
+			System.arraycopy(buffer, tokenStart, buffer, 0, keep);
+			offset += tokenStart;
+			pos -= tokenStart;
+			tokenStart = 0;
+			limit = keep;
+		} else if (limit == buffer.length) {
+			char[] newBuffer = new char[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, limit);
+			buffer = newBuffer;
+		}
+		int read;
+		do {
+			read = reader.read(buffer, limit, buffer.length - limit);
+		} while (read == 0);
+		if (read == -1) {
+			reader = null;
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+
+	@Override
+	protected long position() {
+		return offset + tokenStart;
+	}
+
+	@Override
+	protected boolean skipContainer() throws IOException {
+		int p = pos;
+		int depth = skipDepth;
+		boolean inString = skipInString;
+		boolean escape = skipEscape;
+		for (;;) {
+			if (p == limit) {
+				// nothing skipped so far has to be kept in the window
+				tokenStart = p;
+				pos = p;
+				if (!fill()) {
+					throw syntaxError("unterminated value");
+				}
+				p = pos;
+			}
+			char c = buffer[p++];
+			if (inString) {
+				if (escape) {
+					escape = false;
+				} else if (c == '\\') {
+					escape = true;
+				} else if (c == '"') {
+					inString = false;
+				}
+			} else if (c == '"') {
+				inString = true;
+			} else if (c == '{' || c == '[') {
+				depth++;
+			} else if ((c == '}' || c == ']') && --depth == 0) {
+				tokenStart = p;
+				pos = p;
+				return true;
+			}
+		}
+	}
+
+	@Override
+	protected int nextToken() throws IOException {
+		int p = pos;
+		for (;;) {
+			if (p == limit) {
+				tokenStart = p;
+				pos = p;
+				if (!fill()) {
+					return EOF;
+				}
+				p = pos;
+			}
+			char c = buffer[p];
+			tokenStart = p;
+			switch (c) {
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\r':
+				p++;
+				continue;
+			case '{':
+				pos = p + 1;
+				return BEGIN_OBJECT;
+			case '}':
+				pos = p + 1;
+				return END_OBJECT;
+			case '[':
+				pos = p + 1;
+				return BEGIN_ARRAY;
+			case ']':
+				pos = p + 1;
+				return END_ARRAY;
+			case ':':
+				pos = p + 1;
+				return COLON;
+			case ',':
+				pos = p + 1;
+				return COMMA;
+			case '"':
+				return string(p);
+			case 't':
+				return literal(p, TRUE_CHARS, TRUE);
+			case 'f':
+				return literal(p, FALSE_CHARS, FALSE);
+			case 'n':
+				return literal(p, NULL_CHARS, NULL);
+			case '-':
+			case '0':
+			case '1':
+			case '2':
+			case '3':
+			case '4':
+			case '5':
+			case '6':
+			case '7':
+			case '8':
+			case '9':
+				return number(p);
+			default:
+				throw syntaxError("unexpected character '" + c + "'");
+			}
+		}
+	}
+
+	private int string(int start) throws IOException {
+		int p = start + 1;
+		boolean escaped = false;
+		for (;;) {
+			if (p >= limit) {
+				int consumed = p - start;
+				if (!fill()) {
+					throw syntaxError("unterminated string");
+				}
+				start = tokenStart;
+				p = start + consumed;
+				continue;
+			}
+			char c = buffer[p];
+			if (c == '"') {
+				break;
+			} else if (c == '\\') {
+				// the escaped char is skipped, it may be a quote
+				escaped = true;
+				p++;
+			}
+			p++;
+		}
+		if (escaped && isScanOnly()) {
+			if (!StringDecoder.isValid(buffer, start + 1, p - start - 1)) {
+				throw syntaxError("invalid escape sequence");
+			}
+			text = buffer;
+			textOffset = start + 1;
+			textLength = p - start - 1;
+		} else if (escaped) {
+			unescape(start + 1, p);
+		} else {
+			// most strings are passed as a slice of the window
+			text = buffer;
+			textOffset = start + 1;
+			textLength = p - start - 1;
+		}
+		pos = p + 1;
+		return STRING;
+	}
+
+	private void unescape(int from, int to) {
+		if (chars.length < to - from) {
+			chars = new char[Math.max(to - from, chars.length * 2)];
+		}
+		int length = StringDecoder.unescape(buffer, from, to - from, chars);
+		if (length < 0) {
+			throw syntaxError("invalid escape sequence");
+		}
+		text = chars;
+		textOffset = 0;
+		textLength = length;
+	}
+
+	private int literal(int start, char[] expected, int token) throws IOException {
+		while (limit - start < expected.length) {
+			if (!fill()) {
+				throw syntaxError("invalid literal");
+			}
+			start = tokenStart;
+		}
+		for (int i = 1; i < expected.length; i++) {
+			if (buffer[start + i] != expected[i]) {
+				throw syntaxError("invalid literal");
+			}
+		}
+		pos = start + expected.length;
+		return token;
+	}
+
+	private int number(int start) throws IOException {
+		// find the extent of the number first, so that it is available as one range
+		int end = start + 1;
+		for (;;) {
+			if (end == limit) {
+				int consumed = end - start;
+				if (!fill()) {
+					break;
+				}
+				start = tokenStart;
+				end = start + consumed;
+			}
+			if (!isNumberChar(buffer[end])) {
+				break;
+			}
+			end++;
+		}
+
+		// validated and converted by the grammar, see NumberParser
+		text = buffer;
+		textOffset = start;
+		textLength = end - start;
+		pos = end;
+		return NUMBER;
+	}
+
+	private static boolean isNumberChar(char c) {
+		return c >= '0' && c <= '9' || c == '.' || c == 'e' || c == 'E' || c == '-' || c == '+';
+	}
+
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.math.BigInteger;
+
+/**
+ * Formats doubles like {@link Double#toString(double)} of Java 19 and later:
+ * the shortest decimal that rounds to the double, the closest one if there
+ * are several, in plain notation from 10^-3 to 10^7 and in computerized
+ * scientific notation otherwise. Earlier versions of Java sometimes produce
+ * longer decimals.
+ * <p>
+ * This is the Schubfach algorithm by Raffaello Giulietti, see "The
+ * Schubfach way to render doubles" (2020). The chars are written to a
+ * buffer that is reused, so formatting does not allocate.
+ *
+ * @author rasifix
+ */
+final class DoubleFormat {
+
+	private static final int P = 53;
+
+	private static final int Q_MIN = -1074;
+
+	private static final long C_MIN = 1L << (P - 1);
+
+	private static final long T_MASK = C_MIN - 1;
+
+	private static final int BQ_MASK = 0x7ff;
+
+	/**
+	 * Subnormal significands below this have too few digits and are scaled.
+	 */
+	private static final int C_TINY = 3;
+
+	private static final int K_MIN = -324;
+
+	private static final int K_MAX = 292;
+
+	/**
+	 * Number of significant digits of the decimal that is rendered.
+	 */
+	private static final int H = 17;
+
+	private static final long MASK_63 = (1L << 63) - 1;
+
+	private static final int MASK_28 = (1 << 28) - 1;
+
+	private static final long[] POW10 = new long[H + 1];
+
+	/**
+	 * For each k, the most and the least significant 63 bits of the 126 bit
+	 * number g with (g - 1) 2^r &lt;= 10^-k &lt; g 2^r.
+	 */
+	private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = 10 * POW10[i - 1];
+		}
+		final BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+		for (int k = K_MIN; k <= K_MAX; k++) {
+			BigInteger g;
+			if (k <= 0) {
+				BigInteger pow = BigInteger.TEN.pow(-k);
+				int r = pow.bitLength() - 126;
+				g = r >= 0 ? pow.shiftRight(r) : pow.shiftLeft(-r);
+			} else {
+				BigInteger pow = BigInteger.TEN.pow(k);
+				g = BigInteger.ONE.shiftLeft(125 + pow.bitLength()).divide(pow);
+			}
+			g = g.add(BigInteger.ONE);
+			G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+			G[2 * (k - K_MIN) + 1] = g.and(mask).longValue();
+		}
+	}
+
+	/**
+	 * Large enough for "-2.2250738585072014E-308".
+	 */
+	final char[] chars = new char[32];
+
+	private int index;
+
+	/**
+	 * Formats a double into {@link #chars}.
+	 *
+	 * @return the number of chars
+	 */
+	int format(double v) {
+		index = 0;
+		final long bits = Double.doubleToRawLongBits(v);
+		final long t = bits & T_MASK;
+		final int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+		if (bq == BQ_MASK) {
+			append(t != 0 ? "NaN" : bits < 0 ? "-Infinity" : "Infinity");
+			return index;
+		}
+		if (bits < 0) {
+			append('-');
+		}
+		if (bq != 0) {
+			// normal value: v = c 2^q
+			final int mq = -Q_MIN + 1 - bq;
+			final long c = C_MIN | t;
+			if (0 < mq && mq < P) {
+				// integral values below 2^53 are rendered directly
+				long f = c >> mq;
+				if (f << mq == c) {
+					toChars(f, 0);
+					return index;
+				}
+			}
+			toDecimal(-mq, c, 0);
+		} else if (t != 0) {
+			if (t < C_TINY) {
+				toDecimal(Q_MIN, 10 * t, -1);
+			} else {
+				toDecimal(Q_MIN, t, 0);
+			}
+		} else {
+			append("0.0");
+		}
+		return index;
+	}
+
+	private void toDecimal(int q, long c, int dk) {
+		final int out = (int) c & 0x1;
+		final long cb = c << 2;
+		final long cbr = cb + 2;
+		final long cbl;
+		final int k;
+		if (c != C_MIN || q == Q_MIN) {
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		} else {
+			// the lower neighbour is closer at a power of two
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		final int h = q + flog2pow10(-k) + 2;
+
+		final long g1 = G[2 * (k - K_MIN)];
+		final long g0 = G[2 * (k - K_MIN) + 1];
+
+		final long vb = rop(g1, g0, cb << h);
+		final long vbl = rop(g1, g0, cbl << h);
+		final long vbr = rop(g1, g0, cbr << h);
+
+		final long s = vb >> 2;
+		if (s >= 100) {
+			// try one digit less first: sp10 = 10 floor(s / 10)
+			long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+			long tp10 = sp10 + 10;
+			boolean upin = vbl + out <= sp10 << 2;
+			boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin) {
+				toChars(upin ? sp10 : tp10, k);
+				return;
+			}
+		}
+		final long t = s + 1;
+		boolean uin = vbl + out <= s << 2;
+		boolean win = (t << 2) + out <= vbr;
+		if (uin != win) {
+			toChars(uin ? s : t, k + dk);
+			return;
+		}
+		// both are in the rounding interval, take the closer one
+		long cmp = vb - (s + t << 1);
+		toChars(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk);
+	}
+
+	/**
+	 * Computes round-to-odd of g cp 2^-127.
+	 */
+	private static long rop(long g1, long g0, long cp) {
+		long x1 = multiplyHigh(g0, cp);
+		long y0 = g1 * cp;
+		long y1 = multiplyHigh(g1, cp);
+		long z = (y0 >>> 1) + x1;
+		long vbp = y1 + (z >>> 63);
+		return vbp | (z & MASK_63) + MASK_63 >>> 63;
+	}
+
+	/**
+	 * Renders f 10^e.
+	 */
+	private void toChars(long f, int e) {
+		int len = flog10pow2(Long.SIZE - Long.numberOfLeadingZeros(f));
+		if (f >= POW10[len]) {
+			len += 1;
+		}
+		// scale to exactly H digits, so that f 10^(e - H) is the value
+		f *= POW10[H - len];
+		e += len;
+
+		// split into the first digit h, the next 8 digits m and the last 8 digits l
+		long hm = multiplyHigh(f, 193428131138340668L) >>> 20;
+		int l = (int) (f - 100000000L * hm);
+		int h = (int) (hm * 1441151881L >>> 57);
+		int m = (int) (hm - 100000000 * h);
+
+		if (0 < e && e <= 7) {
+			plainWithoutLeadingZeroes(h, m, l, e);
+		} else if (-3 < e && e <= 0) {
+			plainWithLeadingZeroes(h, m, l, e);
+		} else {
+			scientific(h, m, l, e);
+		}
+	}
+
+	private void plainWithoutLeadingZeroes(int h, int m, int l, int e) {
+		appendDigit(h);
+		int y = y(m);
+		int t;
+		int i = 1;
+		for (; i < e; i++) {
+			t = 10 * y;
+			appendDigit(t >>> 28);
+			y = t & MASK_28;
+		}
+		append('.');
+		for (; i <= 8; i++) {
+			t = 10 * y;
+			appendDigit(t >>> 28);
+			y = t & MASK_28;
+		}
+		lowDigits(l);
+	}
+
+	private void plainWithLeadingZeroes(int h, int m, int l, int e) {
+		appendDigit(0);
+		append('.');
+		for (; e < 0; e++) {
+			appendDigit(0);
+		}
+		appendDigit(h);
+		append8Digits(m);
+		lowDigits(l);
+	}
+
+	private void scientific(int h, int m, int l, int e) {
+		appendDigit(h);
+		append('.');
+		append8Digits(m);
+		lowDigits(l);
+		exponent(e - 1);
+	}
+
+	private void lowDigits(int l) {
+		if (l != 0) {
+			append8Digits(l);
+		}
+		// remove trailing zeroes, but keep one digit after the point
+		while (chars[index - 1] == '0') {
+			index--;
+		}
+		if (chars[index - 1] == '.') {
+			index++;
+		}
+	}
+
+	/**
+	 * Appends the 8 digits of m from left to right, see "Faster Integer
+	 * Formatting" by Paul Khuong.
+	 */
+	private void append8Digits(int m) {
+		int y = y(m);
+		for (int i = 0; i < 8; i++) {
+			int t = 10 * y;
+			appendDigit(t >>> 28);
+			y = t & MASK_28;
+		}
+	}
+
+	/**
+	 * @return floor((a + 1) 2^28 / 10^8) - 1
+	 */
+	private static int y(int a) {
+		return (int) (multiplyHigh((long) (a + 1) << 28, 193428131138340668L) >>> 20) - 1;
+	}
+
+	private void exponent(int e) {
+		append('E');
+		if (e < 0) {
+			append('-');
+			e = -e;
+		}
+		if (e < 10) {
+			appendDigit(e);
+			return;
+		}
+		int d;
+		if (e >= 100) {
+			d = e * 1311 >>> 17;
+			appendDigit(d);
+			e -= 100 * d;
+		}
+		d = e * 103 >>> 10;
+		appendDigit(d);
+		appendDigit(e - 10 * d);
+	}
+
+	private void append(char c) {
+		chars[index++] = c;
+	}
+
+	private void append(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			chars[index++] = s.charAt(i);
+		}
+	}
+
+	private void appendDigit(int d) {
+		chars[index++] = (char) ('0' + d);
+	}
+
+	/**
+	 * @return floor(q log10(2))
+	 */
+	private static int flog10pow2(int q) {
+		return (int) (q * 661971961083L >> 41);
+	}
+
+	/**
+	 * @return floor(log10(3/4 2^q))
+	 */
+	private static int flog10threeQuartersPow2(int q) {
+		return (int) (q * 661971961083L + -274743187321L >> 41);
+	}
+
+	/**
+	 * @return floor(e log2(10))
+	 */
+	private static int flog2pow10(int e) {
+		return (int) (e * 913124641741L >> 38);
+	}
+
+	/**
+	 * The high 64 bits of the signed 128 bit product, Math.multiplyHigh
+	 * is not available before Java 9.
+	 */
+	static long multiplyHigh(long x, long y) {
+		long x1 = x >> 32;
+		long x2 = x & 0xffffffffL;
+		long y1 = y >> 32;
+		long y2 = y & 0xffffffffL;
+		long z2 = x2 * y2;
+		long t = x1 * y2 + (z2 >>> 32);
+		long z1 = t & 0xffffffffL;
+		long z0 = t >> 32;
+		z1 += x2 * y1;
+		return x1 * y1 + z0 + (z1 >> 32);
+	}
+
+}
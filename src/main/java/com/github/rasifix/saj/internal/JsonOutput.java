@@ -0,0 +1,299 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Buffered output of the {@link com.github.rasifix.saj.JsonWriter}. Numbers
+ * and escaped strings are written straight into the buffer, without creating
+ * intermediate Strings. Subclasses define how chars end up in the buffer and
+ * where the buffer is flushed to.
+ *
+ * @author rasifix
+ */
+public abstract class JsonOutput {
+
+	public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * Doubles can be written with at most this many decimal places.
+	 */
+	public static final int MAX_DECIMAL_PLACES = 17;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * For each ASCII char, 0 if it is written as is, 'u' if it is written as
+	 * a unicode escape, otherwise the char written after the backslash. The
+	 * slash is only escaped after '&lt;'.
+	 */
+	private static final char[] ESCAPES = new char[128];
+
+	/**
+	 * The numbers 00 to 99, two digits each.
+	 */
+	private static final char[] DIGIT_PAIRS = new char[200];
+
+	private static final double[] POWERS_OF_TEN = new double[MAX_DECIMAL_PLACES + 1];
+
+	/**
+	 * Scaled doubles below this limit have an error below 2^-13 after
+	 * multiplication with a power of ten.
+	 */
+	private static final double FIXED_LIMIT = 1L << 40;
+
+	/**
+	 * Scaled doubles whose fraction is this close to one half are rounded
+	 * exactly.
+	 */
+	private static final double TIE_WINDOW = 1.0 / 1024;
+
+	static {
+		for (int c = 0; c < ' '; c++) {
+			ESCAPES[c] = 'u';
+		}
+		ESCAPES['\b'] = 'b';
+		ESCAPES['\t'] = 't';
+		ESCAPES['\n'] = 'n';
+		ESCAPES['\f'] = 'f';
+		ESCAPES['\r'] = 'r';
+		ESCAPES['"'] = '"';
+		ESCAPES['\\'] = '\\';
+		ESCAPES['/'] = '/';
+		for (int i = 0; i < 100; i++) {
+			DIGIT_PAIRS[2 * i] = (char) ('0' + i / 10);
+			DIGIT_PAIRS[2 * i + 1] = (char) ('0' + i % 10);
+		}
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+		}
+	}
+
+	/**
+	 * Receives the digits of numbers, right aligned.
+	 */
+	private final char[] digits = new char[32];
+
+	private final DoubleFormat doubles = new DoubleFormat();
+
+	/**
+	 * Writes a char from the ASCII range.
+	 */
+	public abstract void writeAscii(char c) throws IOException;
+
+	/**
+	 * Writes chars from the ASCII range.
+	 */
+	public abstract void writeAscii(char[] ch, int offset, int length) throws IOException;
+
+	/**
+	 * Writes a String consisting of chars from the ASCII range.
+	 */
+	public void writeAscii(String s) throws IOException {
+		write(s, 0, s.length());
+	}
+
+	/**
+	 * Writes a range of a String as is.
+	 *
+	 * @param s the String
+	 * @param start the index of the first char to write
+	 * @param end the index after the last char to write
+	 */
+	public abstract void write(String s, int start, int end) throws IOException;
+
+	/**
+	 * Writes an already escaped fragment, given both as chars and as UTF-8
+	 * bytes. Implementations copy the representation they write in one go.
+	 */
+	public abstract void writeEncoded(char[] chars, byte[] utf8) throws IOException;
+
+	/**
+	 * @return true if there is output in the buffer that has not been
+	 *         written to the target yet
+	 */
+	public abstract boolean isBuffered();
+
+	/**
+	 * Writes the buffered output to the target without flushing the target.
+	 */
+	public abstract void drain() throws IOException;
+
+	/**
+	 * Writes the buffered output to the target and flushes the target.
+	 */
+	public abstract void flush() throws IOException;
+
+	/**
+	 * Writes the buffered output to the target and closes the target.
+	 */
+	public abstract void close() throws IOException;
+
+	public final void writeInt(int value) throws IOException {
+		if (value == Integer.MIN_VALUE) {
+			writeAscii("-2147483648");
+			return;
+		}
+		int p = putDigits(value < 0 ? -value : value, digits.length);
+		if (value < 0) {
+			digits[--p] = '-';
+		}
+		writeAscii(digits, p, digits.length - p);
+	}
+
+	public final void writeLong(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			writeAscii("-9223372036854775808");
+			return;
+		}
+		int p = putDigits(value < 0 ? -value : value, digits.length);
+		if (value < 0) {
+			digits[--p] = '-';
+		}
+		writeAscii(digits, p, digits.length - p);
+	}
+
+	/**
+	 * Puts the digits of a non-negative long in front of position p of
+	 * {@link #digits}, two at a time.
+	 *
+	 * @return the position of the first digit
+	 */
+	private int putDigits(long v, int p) {
+		while (v > Integer.MAX_VALUE) {
+			long q = v / 100;
+			int r = (int) (v - q * 100);
+			v = q;
+			digits[--p] = DIGIT_PAIRS[2 * r + 1];
+			digits[--p] = DIGIT_PAIRS[2 * r];
+		}
+		return putDigits((int) v, p);
+	}
+
+	/**
+	 * Puts the digits of a non-negative int in front of position p of
+	 * {@link #digits}, two at a time.
+	 *
+	 * @return the position of the first digit
+	 */
+	private int putDigits(int v, int p) {
+		while (v >= 100) {
+			int q = v / 100;
+			int r = v - q * 100;
+			v = q;
+			digits[--p] = DIGIT_PAIRS[2 * r + 1];
+			digits[--p] = DIGIT_PAIRS[2 * r];
+		}
+		if (v >= 10) {
+			digits[--p] = DIGIT_PAIRS[2 * v + 1];
+			digits[--p] = DIGIT_PAIRS[2 * v];
+		} else {
+			digits[--p] = (char) ('0' + v);
+		}
+		return p;
+	}
+
+	/**
+	 * Writes the shortest decimal that rounds to the given double, in the
+	 * format of {@link Double#toString(double)}, see {@link DoubleFormat}.
+	 */
+	public final void writeDouble(double value) throws IOException {
+		writeAscii(doubles.chars, 0, doubles.format(value));
+	}
+
+	/**
+	 * Writes a double in plain notation with a fixed number of decimal
+	 * places, rounded half-even. NaN and infinity are written as by
+	 * {@link #writeDouble(double)}.
+	 *
+	 * @param decimalPlaces the number of decimal places, at most {@link #MAX_DECIMAL_PLACES}
+	 */
+	public final void writeDouble(double value, int decimalPlaces) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			writeDouble(value);
+			return;
+		}
+		double scaled = Math.abs(value) * POWERS_OF_TEN[decimalPlaces];
+		double floor = Math.floor(scaled);
+		double fraction = scaled - floor;
+		if (scaled >= FIXED_LIMIT || Math.abs(fraction - 0.5) <= TIE_WINDOW) {
+			// too large or too close to a tie to round the scaled value
+			writeAscii(new BigDecimal(value).setScale(decimalPlaces, RoundingMode.HALF_EVEN).toPlainString());
+			return;
+		}
+		long units = (long) floor + (fraction > 0.5 ? 1 : 0);
+		final boolean negative = value < 0 && units != 0;
+		int p = digits.length;
+		for (int i = 0; i < decimalPlaces; i++) {
+			digits[--p] = (char) ('0' + units % 10);
+			units /= 10;
+		}
+		if (decimalPlaces > 0) {
+			digits[--p] = '.';
+		}
+		p = putDigits(units, p);
+		if (negative) {
+			digits[--p] = '-';
+		}
+		writeAscii(digits, p, digits.length - p);
+	}
+
+	/**
+	 * Writes a quoted string. Besides the chars JSON requires to be escaped,
+	 * the slash in <code>&lt;/</code> and the chars U+0080-U+009F and
+	 * U+2000-U+20FF are escaped, so that the output can be embedded in HTML
+	 * and JavaScript.
+	 */
+	public final void writeString(String value) throws IOException {
+		writeAscii('"');
+		final int length = value.length();
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			char escape;
+			if (c < 128) {
+				escape = ESCAPES[c];
+				if (escape == 0 || escape == '/' && (i == 0 || value.charAt(i - 1) != '<')) {
+					continue;
+				}
+			} else if (c < '\u00a0' || c >= '\u2000' && c < '\u2100') {
+				escape = 'u';
+			} else {
+				continue;
+			}
+			// the run of chars written as is is copied in one go
+			write(value, start, i);
+			writeAscii('\\');
+			if (escape == 'u') {
+				writeAscii('u');
+				writeAscii(HEX_DIGITS[c >> 12]);
+				writeAscii(HEX_DIGITS[(c >> 8) & 0xf]);
+				writeAscii(HEX_DIGITS[(c >> 4) & 0xf]);
+				writeAscii(HEX_DIGITS[c & 0xf]);
+			} else {
+				writeAscii(escape);
+			}
+			start = i + 1;
+		}
+		write(value, start, length);
+		writeAscii('"');
+	}
+
+}
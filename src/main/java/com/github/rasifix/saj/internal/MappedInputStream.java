@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * InputStream that reads a {@link FileChannel} through memory mappings. The
+ * file is mapped in chunks, so files larger than 2 GB can be read as well.
+ * Reads are bulk copies out of the mapping, no system call is made per read.
+ * The position of the channel is not modified.
+ *
+ * @author rasifix
+ */
+public class MappedInputStream extends InputStream {
+
+	public static final long DEFAULT_CHUNK_SIZE = 256L * 1024 * 1024;
+
+	private final FileChannel channel;
+
+	private final long chunkSize;
+
+	private final long end;
+
+	private long position;
+
+	private MappedByteBuffer chunk;
+
+	public MappedInputStream(FileChannel channel) throws IOException {
+		this(channel, DEFAULT_CHUNK_SIZE);
+	}
+
+	public MappedInputStream(FileChannel channel, long chunkSize) throws IOException {
+		if (channel == null) {
+			throw new IllegalArgumentException("channel cannot be null");
+		}
+		if (chunkSize <= 0 || chunkSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("chunk size must be between 1 and " + Integer.MAX_VALUE);
+		}
+		this.channel = channel;
+		this.chunkSize = chunkSize;
+		this.position = channel.position();
+		this.end = channel.size();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextChunk()) {
+			return -1;
+		}
+		return chunk.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextChunk()) {
+			return -1;
+		}
+		int n = Math.min(len, chunk.remaining());
+		chunk.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return chunk == null ? 0 : chunk.remaining();
+	}
+
+	@Override
+	public void close() throws IOException {
+		chunk = null;
+	}
+
+	private boolean nextChunk() throws IOException {
+		if (chunk != null && chunk.hasRemaining()) {
+			return true;
+		}
+		if (position >= end) {
+			return false;
+		}
+		long size = Math.min(chunkSize, end - position);
+		chunk = channel.map(MapMode.READ_ONLY, position, size);
+		position += size;
+		return true;
+	}
+
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.github.rasifix.saj.JsonContentHandler;
+
+/**
+ * Validates, classifies and converts JSON numbers in a single pass over
+ * their characters. Integers are reported as int or long if they fit,
+ * otherwise as BigDecimal. Other numbers are converted to double using the
+ * Clinger fast path for small exponents and the Eisel-Lemire algorithm
+ * otherwise. Only numbers with more than 19 significant digits that cannot
+ * be rounded unambiguously fall back to {@link Double#parseDouble(String)}.
+ *
+ * @author rasifix
+ */
+public final class NumberParser {
+
+	private static final int MAX_DIGITS = 19;
+
+	private static final long MAX_FAST_MANTISSA = 1L << 53;
+
+	private static final double[] FAST_POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private static final int SMALLEST_POWER_OF_TEN = -342;
+
+	private static final int LARGEST_POWER_OF_TEN = 308;
+
+	/**
+	 * Truncated 128-bit approximations of 5^q, normalized so that the most
+	 * significant bit is set: high 64 bits at 2 * i, low 64 bits at 2 * i + 1
+	 * where i = q - {@link #SMALLEST_POWER_OF_TEN}.
+	 */
+	private static final long[] POWERS_OF_FIVE = new long[2 * (LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1)];
+
+	static {
+		final BigInteger five = BigInteger.valueOf(5);
+		for (int q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; q++) {
+			BigInteger value;
+			if (q < 0) {
+				BigInteger power = five.pow(-q);
+				int z = power.bitLength();
+				int b = q >= -27 ? z + 127 : 2 * z + 128;
+				value = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+			} else {
+				value = five.pow(q);
+			}
+			int bits = value.bitLength();
+			value = bits < 128 ? value.shiftLeft(128 - bits) : value.shiftRight(bits - 128);
+			int i = 2 * (q - SMALLEST_POWER_OF_TEN);
+			POWERS_OF_FIVE[i] = value.shiftRight(64).longValue();
+			POWERS_OF_FIVE[i + 1] = value.longValue();
+		}
+	}
+
+	private NumberParser() {
+		// static utility
+	}
+
+	/**
+	 * Checks the syntax of the number in the given range without converting it.
+	 *
+	 * @param text the buffer containing the number
+	 * @param offset the start of the number
+	 * @param length the length of the number
+	 * @return true if the range contains a valid JSON number
+	 */
+	public static boolean isValid(char[] text, int offset, int length) {
+		final int end = offset + length;
+		int p = offset;
+		if (p < end && text[p] == '-') {
+			p++;
+		}
+		if (p < end && text[p] == '0') {
+			p++;
+		} else if (p < end && isDigit(text[p])) {
+			p = skipDigits(text, p, end);
+		} else {
+			return false;
+		}
+		if (p < end && text[p] == '.') {
+			if (++p >= end || !isDigit(text[p])) {
+				return false;
+			}
+			p = skipDigits(text, p, end);
+		}
+		if (p < end && (text[p] == 'e' || text[p] == 'E')) {
+			if (++p < end && (text[p] == '+' || text[p] == '-')) {
+				p++;
+			}
+			if (p >= end || !isDigit(text[p])) {
+				return false;
+			}
+			p = skipDigits(text, p, end);
+		}
+		return p == end;
+	}
+
+	private static int skipDigits(char[] text, int p, int end) {
+		while (p < end && isDigit(text[p])) {
+			p++;
+		}
+		return p;
+	}
+
+	/**
+	 * Parses the number in the given range and reports it to the handler.
+	 *
+	 * @param text the buffer containing the number
+	 * @param offset the start of the number
+	 * @param length the length of the number
+	 * @param useBigDecimal whether non-integral numbers are reported as
+	 *        BigDecimal instead of double
+	 * @param handler the handler to notify
+	 * @return false if the range does not contain a valid JSON number, in
+	 *         that case the handler is not notified
+	 */
+	public static boolean parse(char[] text, int offset, int length, boolean useBigDecimal, JsonContentHandler handler) {
+		final int end = offset + length;
+		int p = offset;
+		boolean negative = false;
+		if (p < end && text[p] == '-') {
+			negative = true;
+			p++;
+		}
+
+		// mantissa is an unsigned 64-bit value of at most 19 significant digits
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean truncated = false;
+		boolean integral = true;
+
+		if (p < end && text[p] == '0') {
+			p++;
+		} else if (p < end && isDigit(text[p])) {
+			do {
+				if (digits < MAX_DIGITS) {
+					mantissa = 10 * mantissa + (text[p] - '0');
+					digits++;
+				} else {
+					truncated |= text[p] != '0';
+					exponent++;
+				}
+				p++;
+			} while (p < end && isDigit(text[p]));
+		} else {
+			return false;
+		}
+
+		if (p < end && text[p] == '.') {
+			integral = false;
+			p++;
+			if (p >= end || !isDigit(text[p])) {
+				return false;
+			}
+			do {
+				if (digits < MAX_DIGITS) {
+					mantissa = 10 * mantissa + (text[p] - '0');
+					exponent--;
+					if (mantissa != 0) {
+						digits++;
+					}
+				} else {
+					truncated |= text[p] != '0';
+				}
+				p++;
+			} while (p < end && isDigit(text[p]));
+		}
+
+		if (p < end && (text[p] == 'e' || text[p] == 'E')) {
+			integral = false;
+			p++;
+			boolean negativeExponent = false;
+			if (p < end && (text[p] == '+' || text[p] == '-')) {
+				negativeExponent = text[p] == '-';
+				p++;
+			}
+			if (p >= end || !isDigit(text[p])) {
+				return false;
+			}
+			int value = 0;
+			do {
+				// larger exponents are out of range anyway
+				if (value < 100000) {
+					value = 10 * value + (text[p] - '0');
+				}
+				p++;
+			} while (p < end && isDigit(text[p]));
+			exponent += negativeExponent ? -value : value;
+		}
+
+		if (p != end) {
+			return false;
+		}
+
+		if (integral) {
+			if (!truncated && exponent == 0 && mantissa >= 0) {
+				long value = negative ? -mantissa : mantissa;
+				if (value == (int) value) {
+					handler.value((int) value);
+				} else {
+					handler.value(value);
+				}
+			} else if (!truncated && exponent == 0 && negative && mantissa == Long.MIN_VALUE) {
+				handler.value(Long.MIN_VALUE);
+			} else {
+				handler.value(new BigDecimal(text, offset, length));
+			}
+		} else if (useBigDecimal) {
+			handler.value(new BigDecimal(text, offset, length));
+		} else {
+			handler.value(toDouble(negative, mantissa, exponent, truncated, text, offset, length));
+		}
+		return true;
+	}
+
+	private static double toDouble(boolean negative, long mantissa, int exponent, boolean truncated,
+			char[] text, int offset, int length) {
+		if (!truncated) {
+			if (mantissa >= 0 && mantissa <= MAX_FAST_MANTISSA && exponent >= -22 && exponent <= 22) {
+				// both operands are exact, so is the correctly rounded result
+				double value = mantissa;
+				value = exponent < 0 ? value / FAST_POWERS_OF_TEN[-exponent] : value * FAST_POWERS_OF_TEN[exponent];
+				return negative ? -value : value;
+			}
+			return toDouble(negative, mantissa, exponent);
+		}
+
+		// the exact value lies between mantissa and mantissa + 1
+		double lower = toDouble(negative, mantissa, exponent);
+		double upper = toDouble(negative, mantissa + 1, exponent);
+		if (lower == upper) {
+			return lower;
+		}
+		return Double.parseDouble(new String(text, offset, length));
+	}
+
+	/**
+	 * Eisel-Lemire conversion of mantissa * 10^exponent, correctly rounded for
+	 * any mantissa of at most 19 decimal digits (interpreted as unsigned).
+	 */
+	static double toDouble(boolean negative, long mantissa, int exponent) {
+		final long sign = negative ? Long.MIN_VALUE : 0;
+		if (mantissa == 0 || exponent < SMALLEST_POWER_OF_TEN) {
+			return Double.longBitsToDouble(sign);
+		}
+		if (exponent > LARGEST_POWER_OF_TEN) {
+			return Double.longBitsToDouble(sign | 0x7FF0000000000000L);
+		}
+
+		final int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+		final long w = mantissa << leadingZeros;
+
+		// 128-bit product of w and the power of five, only as precise as needed
+		final int index = 2 * (exponent - SMALLEST_POWER_OF_TEN);
+		long high = multiplyHigh(w, POWERS_OF_FIVE[index]);
+		long low = w * POWERS_OF_FIVE[index];
+		if ((high & 0x1FF) == 0x1FF) {
+			long secondHigh = multiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+			low += secondHigh;
+			if (unsignedLess(low, secondHigh)) {
+				high++;
+			}
+		}
+
+		final int upperBit = (int) (high >>> 63);
+		final int shift = upperBit + 9;
+		long m = high >>> shift;
+		int power2 = (217706 * exponent >> 16) + 63 + upperBit - leadingZeros + 1023;
+
+		if (power2 <= 0) {
+			// subnormal
+			if (-power2 + 1 >= 64) {
+				return Double.longBitsToDouble(sign);
+			}
+			m >>>= -power2 + 1;
+			m += m & 1;
+			m >>>= 1;
+			power2 = m < (1L << 52) ? 0 : 1;
+			return Double.longBitsToDouble(sign | ((long) power2 << 52) | m);
+		}
+
+		// exactly halfway between two doubles: round to even
+		if ((low == 0 || low == 1) && exponent >= -4 && exponent <= 23 && (m & 3) == 1 && (m << shift) == high) {
+			m &= ~1L;
+		}
+		m += m & 1;
+		m >>>= 1;
+		if (m >= (2L << 52)) {
+			m = 1L << 52;
+			power2++;
+		}
+		m &= ~(1L << 52);
+		if (power2 >= 0x7FF) {
+			return Double.longBitsToDouble(sign | 0x7FF0000000000000L);
+		}
+		return Double.longBitsToDouble(sign | ((long) power2 << 52) | m);
+	}
+
+	/**
+	 * @return the high 64 bits of the unsigned 128-bit product of x and y
+	 */
+	static long multiplyHigh(long x, long y) {
+		final long x0 = x & 0xFFFFFFFFL;
+		final long x1 = x >>> 32;
+		final long y0 = y & 0xFFFFFFFFL;
+		final long y1 = y >>> 32;
+		final long p01 = x0 * y1;
+		final long middle = x1 * y0 + ((x0 * y0) >>> 32) + (p01 & 0xFFFFFFFFL);
+		return x1 * y1 + (middle >>> 32) + (p01 >>> 32);
+	}
+
+	private static boolean unsignedLess(long a, long b) {
+		return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+}
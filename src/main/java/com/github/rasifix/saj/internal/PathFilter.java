@@ -0,0 +1,267 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.util.Arrays;
+
+/**
+ * Set of include paths, compiled into a tree of {@link Node}s that the
+ * parser follows while descending into the document. Paths use a subset of
+ * the JSONPath syntax:
+ * <ul>
+ * <li><code>$</code> is the root value</li>
+ * <li><code>.name</code> or <code>['name']</code> selects a member</li>
+ * <li><code>.*</code> selects all members</li>
+ * <li><code>[2]</code> selects the element at index 2</li>
+ * <li><code>[*]</code> selects all elements</li>
+ * </ul>
+ *
+ * @author rasifix
+ */
+public final class PathFilter {
+
+	private final Node root = new Node();
+
+	/**
+	 * @param paths the include paths, e.g. <code>$.header.type</code>
+	 * @throws IllegalArgumentException if a path is not valid
+	 */
+	public PathFilter(String... paths) {
+		for (String path : paths) {
+			add(path);
+		}
+		root.mergeWildcards();
+	}
+
+	/**
+	 * @return the node of the root value
+	 */
+	public Node root() {
+		return root;
+	}
+
+	private void add(String path) {
+		if (path == null) {
+			throw new IllegalArgumentException("path cannot be null");
+		}
+		if (!path.startsWith("$")) {
+			throw new IllegalArgumentException("path must start with $: " + path);
+		}
+		Node node = root;
+		int p = 1;
+		final int length = path.length();
+		while (p < length) {
+			char c = path.charAt(p);
+			if (c == '.') {
+				int end = p + 1;
+				while (end < length && path.charAt(end) != '.' && path.charAt(end) != '[') {
+					end++;
+				}
+				if (end == p + 1) {
+					throw new IllegalArgumentException("empty member name in path " + path);
+				}
+				String name = path.substring(p + 1, end);
+				node = "*".equals(name) ? node.anyMember() : node.addMember(name);
+				p = end;
+			} else if (c == '[') {
+				int end = path.indexOf(']', p);
+				if (end < 0) {
+					throw new IllegalArgumentException("missing ] in path " + path);
+				}
+				String selector = path.substring(p + 1, end);
+				if ("*".equals(selector)) {
+					node = node.anyElement();
+				} else if (selector.length() >= 2 && selector.charAt(0) == '\''
+						&& selector.charAt(selector.length() - 1) == '\'') {
+					node = node.addMember(selector.substring(1, selector.length() - 1));
+				} else {
+					try {
+						node = node.addElement(Integer.parseInt(selector));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("invalid selector [" + selector + "] in path " + path);
+					}
+				}
+				p = end + 1;
+			} else {
+				throw new IllegalArgumentException("unexpected character '" + c + "' in path " + path);
+			}
+		}
+		node.selected = true;
+	}
+
+	/**
+	 * Position in the tree of include paths. A node is either selected, then
+	 * the whole value is included, or it leads to selected nodes further down.
+	 */
+	public static final class Node {
+
+		private boolean selected;
+
+		private String[] names = new String[0];
+
+		private Node[] members = new Node[0];
+
+		private Node anyMember;
+
+		private int[] indexes = new int[0];
+
+		private Node[] elements = new Node[0];
+
+		private Node anyElement;
+
+		/**
+		 * @return true if the value at this node is included completely
+		 */
+		public boolean isSelected() {
+			return selected;
+		}
+
+		/**
+		 * @return the node of the member with the given name or null if the
+		 *         member is excluded
+		 */
+		public Node member(char[] name, int offset, int length) {
+			if (selected) {
+				return this;
+			}
+			for (int i = 0; i < names.length; i++) {
+				if (matches(names[i], name, offset, length)) {
+					return members[i];
+				}
+			}
+			return anyMember;
+		}
+
+		/**
+		 * @return the node of the element at the given index or null if the
+		 *         element is excluded
+		 */
+		public Node element(int index) {
+			if (selected) {
+				return this;
+			}
+			for (int i = 0; i < indexes.length; i++) {
+				if (indexes[i] == index) {
+					return elements[i];
+				}
+			}
+			return anyElement;
+		}
+
+		private Node addMember(String name) {
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equals(name)) {
+					return members[i];
+				}
+			}
+			Node node = new Node();
+			names = append(names, name);
+			members = append(members, node);
+			return node;
+		}
+
+		private Node anyMember() {
+			if (anyMember == null) {
+				anyMember = new Node();
+			}
+			return anyMember;
+		}
+
+		private Node addElement(int index) {
+			if (index < 0) {
+				throw new IllegalArgumentException("negative index " + index);
+			}
+			for (int i = 0; i < indexes.length; i++) {
+				if (indexes[i] == index) {
+					return elements[i];
+				}
+			}
+			Node node = new Node();
+			indexes = Arrays.copyOf(indexes, indexes.length + 1);
+			indexes[indexes.length - 1] = index;
+			elements = append(elements, node);
+			return node;
+		}
+
+		private Node anyElement() {
+			if (anyElement == null) {
+				anyElement = new Node();
+			}
+			return anyElement;
+		}
+
+		/**
+		 * Named members and indexed elements also have to match the paths
+		 * continuing from the wildcards.
+		 */
+		private void mergeWildcards() {
+			if (anyMember != null) {
+				for (Node member : members) {
+					member.merge(anyMember);
+				}
+				anyMember.mergeWildcards();
+			}
+			if (anyElement != null) {
+				for (Node element : elements) {
+					element.merge(anyElement);
+				}
+				anyElement.mergeWildcards();
+			}
+			for (Node member : members) {
+				member.mergeWildcards();
+			}
+			for (Node element : elements) {
+				element.mergeWildcards();
+			}
+		}
+
+		private void merge(Node other) {
+			selected |= other.selected;
+			for (int i = 0; i < other.names.length; i++) {
+				addMember(other.names[i]).merge(other.members[i]);
+			}
+			if (other.anyMember != null) {
+				anyMember().merge(other.anyMember);
+			}
+			for (int i = 0; i < other.indexes.length; i++) {
+				addElement(other.indexes[i]).merge(other.elements[i]);
+			}
+			if (other.anyElement != null) {
+				anyElement().merge(other.anyElement);
+			}
+		}
+
+		private static boolean matches(String name, char[] ch, int offset, int length) {
+			if (name.length() != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (name.charAt(i) != ch[offset + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static <T> T[] append(T[] array, T element) {
+			T[] copy = Arrays.copyOf(array, array.length + 1);
+			copy[array.length] = element;
+			return copy;
+		}
+
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import com.github.rasifix.saj.JsonContentHandler;
+
+/**
+ * Handler that is only interested in the structure of a document. A parser
+ * given such a handler checks the syntax of member names, strings and
+ * numbers but does not decode them, it reports where they occur instead.
+ * Objects, arrays and literals are reported as usual.
+ *
+ * @author rasifix
+ */
+interface ScanHandler extends JsonContentHandler {
+
+	/**
+	 * Invoked instead of {@link JsonContentHandler#startMember(String)}.
+	 */
+	void memberName();
+
+	/**
+	 * Invoked instead of {@link JsonContentHandler#value(String)}.
+	 */
+	void string();
+
+	/**
+	 * Invoked instead of the number callbacks of {@link JsonContentHandler}.
+	 */
+	void number();
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import com.github.rasifix.saj.JsonParseException;
+
+/**
+ * Decodes the escape sequences of JSON strings. Besides the escape sequences
+ * defined by JSON, <code>\'</code> is accepted for compatibility with the
+ * ANTLR grammar.
+ *
+ * @author rasifix
+ */
+public final class StringDecoder {
+
+	private StringDecoder() {
+		// static utility
+	}
+
+	/**
+	 * Checks the escape sequences in the given range without decoding them.
+	 *
+	 * @param source the buffer containing the string contents without quotes
+	 * @param offset the start of the string contents
+	 * @param length the length of the string contents
+	 * @return false if the string contains an invalid escape sequence
+	 */
+	public static boolean isValid(char[] source, int offset, int length) {
+		final int end = offset + length;
+		int i = offset;
+		while (i < end) {
+			if (source[i++] != '\\') {
+				continue;
+			}
+			if (i == end) {
+				return false;
+			}
+			switch (source[i++]) {
+			case '"':
+			case '\\':
+			case '/':
+			case '\'':
+			case 'b':
+			case 'f':
+			case 'n':
+			case 'r':
+			case 't':
+				break;
+			case 'u':
+				if (end - i < 4) {
+					return false;
+				}
+				for (int k = 0; k < 4; k++) {
+					if (hexDigit(source[i++]) < 0) {
+						return false;
+					}
+				}
+				break;
+			default:
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the escape sequences in the given range. As decoding never
+	 * makes a string longer, source and destination may be the same array
+	 * if <code>offset</code> is 0.
+	 *
+	 * @param source the buffer containing the string contents without quotes
+	 * @param offset the start of the string contents
+	 * @param length the length of the string contents
+	 * @param dest the buffer receiving the decoded string starting at 0,
+	 *        must be at least <code>length</code> long
+	 * @return the length of the decoded string or -1 if the string contains
+	 *         an invalid escape sequence
+	 */
+	public static int unescape(char[] source, int offset, int length, char[] dest) {
+		final int end = offset + length;
+		int n = 0;
+		int i = offset;
+		while (i < end) {
+			char c = source[i++];
+			if (c != '\\') {
+				dest[n++] = c;
+				continue;
+			}
+			if (i == end) {
+				return -1;
+			}
+			switch (source[i++]) {
+			case '"':
+				dest[n++] = '"';
+				break;
+			case '\\':
+				dest[n++] = '\\';
+				break;
+			case '/':
+				dest[n++] = '/';
+				break;
+			case '\'':
+				dest[n++] = '\'';
+				break;
+			case 'b':
+				dest[n++] = '\b';
+				break;
+			case 'f':
+				dest[n++] = '\f';
+				break;
+			case 'n':
+				dest[n++] = '\n';
+				break;
+			case 'r':
+				dest[n++] = '\r';
+				break;
+			case 't':
+				dest[n++] = '\t';
+				break;
+			case 'u':
+				if (end - i < 4) {
+					return -1;
+				}
+				int value = 0;
+				for (int k = 0; k < 4; k++) {
+					int digit = hexDigit(source[i++]);
+					if (digit < 0) {
+						return -1;
+					}
+					value = (value << 4) | digit;
+				}
+				dest[n++] = (char) value;
+				break;
+			default:
+				return -1;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Decodes the escape sequences in the given string.
+	 *
+	 * @param value the string contents without quotes
+	 * @return the decoded string
+	 * @throws JsonParseException if the string contains an invalid escape sequence
+	 */
+	public static String unescape(String value) {
+		if (value.indexOf('\\') < 0) {
+			return value;
+		}
+		char[] chars = value.toCharArray();
+		int length = unescape(chars, 0, chars.length, chars);
+		if (length < 0) {
+			throw new JsonParseException("invalid escape sequence in string " + value);
+		}
+		return new String(chars, 0, length);
+	}
+
+	private static int hexDigit(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		} else if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		} else if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import com.github.rasifix.saj.JsonContentHandler;
+import com.github.rasifix.saj.JsonParseException;
+
+/**
+ * Structural index of a JSON document held in a char array. The document is
+ * validated once while the index is built, the index only records the kind
+ * and position of every value and member name. Values are decoded from the
+ * retained input when they are requested.
+ * <p>
+ * Entries are numbered in document order. The entry of an object or array
+ * is followed by the entries of its members (name, value) or elements.
+ * {@link #next(int)} skips over an entry including its content. An index
+ * is not thread-safe.
+ *
+ * @author rasifix
+ */
+public final class StructuralIndex {
+
+	public static final int OBJECT = 1;
+
+	public static final int ARRAY = 2;
+
+	public static final int NAME = 3;
+
+	public static final int STRING = 4;
+
+	public static final int NUMBER = 5;
+
+	public static final int TRUE = 6;
+
+	public static final int FALSE = 7;
+
+	public static final int NULL = 8;
+
+	private final char[] input;
+
+	/**
+	 * The end of the indexed range of the input.
+	 */
+	private final int end;
+
+	private final SymbolTable symbols = new SymbolTable();
+
+	/**
+	 * Two ints per entry: the kind and, for objects and arrays, the entry
+	 * after the content, for all others the position in the input.
+	 */
+	private int[] tape = new int[64];
+
+	private int size;
+
+	private char[] chars = new char[64];
+
+	private final NumberCapture capture = new NumberCapture();
+
+	private StructuralIndex(char[] input, int end) {
+		this.input = input;
+		this.end = end;
+	}
+
+	/**
+	 * Builds the index of the JSON value in the given range. The input is
+	 * only validated, no Strings or numbers are created while indexing.
+	 *
+	 * @param input the array containing the JSON expression, retained by the index
+	 * @param offset the start of the JSON expression
+	 * @param length the length of the JSON expression
+	 * @return the index, the value is entry 0
+	 * @throws JsonParseException if the input is not well-formed JSON
+	 */
+	public static StructuralIndex build(char[] input, int offset, int length) {
+		StructuralIndex index = new StructuralIndex(input, offset + length);
+		Builder builder = new Builder(index);
+		CharParser parser = new CharParser(builder);
+		builder.parser = parser;
+		parser.parse(input, offset, length);
+		return index;
+	}
+
+	/**
+	 * @return the kind of the entry
+	 */
+	public int kind(int entry) {
+		return tape[2 * entry];
+	}
+
+	/**
+	 * @return the entry following the given entry and its content
+	 */
+	public int next(int entry) {
+		int kind = tape[2 * entry];
+		return kind == OBJECT || kind == ARRAY ? tape[2 * entry + 1] : entry + 1;
+	}
+
+	/**
+	 * Decodes a {@link #NAME} entry. Names are interned.
+	 */
+	public String name(int entry) {
+		int start = tape[2 * entry + 1] + 1;
+		int end = stringEnd(start);
+		if (isEscaped(start, end)) {
+			// unescape may replace chars, so it has to run first
+			int length = unescape(start, end);
+			return symbols.lookup(chars, 0, length);
+		}
+		return symbols.lookup(input, start, end - start);
+	}
+
+	/**
+	 * Decodes a {@link #STRING} entry.
+	 */
+	public String string(int entry) {
+		int start = tape[2 * entry + 1] + 1;
+		int end = stringEnd(start);
+		if (isEscaped(start, end)) {
+			int length = unescape(start, end);
+			return new String(chars, 0, length);
+		}
+		return new String(input, start, end - start);
+	}
+
+	/**
+	 * Decodes a {@link #NUMBER} entry like the reader does.
+	 *
+	 * @param useBigDecimal whether non-integral numbers are returned as BigDecimal
+	 * @return an Integer, Long, Double or BigDecimal
+	 */
+	public Number number(int entry, boolean useBigDecimal) {
+		int start = tape[2 * entry + 1];
+		int p = start + 1;
+		while (p < end && isNumberChar(input[p])) {
+			p++;
+		}
+		NumberParser.parse(input, start, p - start, useBigDecimal, capture);
+		return capture.number;
+	}
+
+	private int unescape(int start, int end) {
+		if (chars.length < end - start) {
+			chars = new char[end - start];
+		}
+		return StringDecoder.unescape(input, start, end - start, chars);
+	}
+
+	private int stringEnd(int start) {
+		int p = start;
+		while (input[p] != '"') {
+			p += input[p] == '\\' ? 2 : 1;
+		}
+		return p;
+	}
+
+	private boolean isEscaped(int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (input[i] == '\\') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isNumberChar(char c) {
+		return c >= '0' && c <= '9' || c == '.' || c == 'e' || c == 'E' || c == '-' || c == '+';
+	}
+
+	private int add(int kind, int payload) {
+		if (2 * size == tape.length) {
+			tape = Arrays.copyOf(tape, 2 * tape.length);
+		}
+		tape[2 * size] = kind;
+		tape[2 * size + 1] = payload;
+		return size++;
+	}
+
+	/**
+	 * Records the events of the parser in the index. As a {@link ScanHandler}
+	 * it is only told where names, strings and numbers are.
+	 */
+	private static class Builder implements ScanHandler {
+
+		private final StructuralIndex index;
+
+		private CharParser parser;
+
+		private int[] open = new int[16];
+
+		private int depth;
+
+		Builder(StructuralIndex index) {
+			this.index = index;
+		}
+
+		private void scalar(int kind) {
+			index.add(kind, (int) parser.position());
+		}
+
+		private void start(int kind) {
+			if (depth == open.length) {
+				open = Arrays.copyOf(open, 2 * depth);
+			}
+			open[depth++] = index.add(kind, 0);
+		}
+
+		private void end() {
+			int entry = open[--depth];
+			index.tape[2 * entry + 1] = index.size;
+		}
+
+		public void startObject() {
+			start(OBJECT);
+		}
+
+		public void endObject() {
+			end();
+		}
+
+		public void startArray() {
+			start(ARRAY);
+		}
+
+		public void endArray() {
+			end();
+		}
+
+		public void memberName() {
+			scalar(NAME);
+		}
+
+		public void startMember(String name) {
+			scalar(NAME);
+		}
+
+		public void endMember() {
+			// the next name or the end of the object follows
+		}
+
+		public void string() {
+			scalar(STRING);
+		}
+
+		public void number() {
+			scalar(NUMBER);
+		}
+
+		public void value(String value) {
+			scalar(STRING);
+		}
+
+		public void value(double value) {
+			scalar(NUMBER);
+		}
+
+		public void value(int value) {
+			scalar(NUMBER);
+		}
+
+		public void value(long value) {
+			scalar(NUMBER);
+		}
+
+		public void value(BigDecimal value) {
+			scalar(NUMBER);
+		}
+
+		public void value(boolean value) {
+			scalar(value ? TRUE : FALSE);
+		}
+
+		public void nullValue() {
+			scalar(NULL);
+		}
+
+	}
+
+	/**
+	 * Receives the number decoded by the {@link NumberParser}.
+	 */
+	private static class NumberCapture implements JsonContentHandler {
+
+		private Number number;
+
+		public void value(double value) {
+			number = value;
+		}
+
+		public void value(int value) {
+			number = value;
+		}
+
+		public void value(long value) {
+			number = value;
+		}
+
+		public void value(BigDecimal value) {
+			number = value;
+		}
+
+		public void startObject() {
+			throw new IllegalStateException();
+		}
+
+		public void startMember(String name) {
+			throw new IllegalStateException();
+		}
+
+		public void endMember() {
+			throw new IllegalStateException();
+		}
+
+		public void endObject() {
+			throw new IllegalStateException();
+		}
+
+		public void startArray() {
+			throw new IllegalStateException();
+		}
+
+		public void endArray() {
+			throw new IllegalStateException();
+		}
+
+		public void value(String value) {
+			throw new IllegalStateException();
+		}
+
+		public void value(boolean value) {
+			throw new IllegalStateException();
+		}
+
+		public void nullValue() {
+			throw new IllegalStateException();
+		}
+
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.util.Arrays;
+
+/**
+ * Bounded table of canonical String instances for member names. Names are
+ * looked up by their characters, so a name that has been seen before is
+ * returned without allocating. Documents usually repeat a small set of
+ * member names, the table is cleared once it holds {@link #MAX_SYMBOLS}
+ * names so that documents with arbitrary member names cannot fill the heap.
+ * Names longer than {@link #MAX_LENGTH} are not interned.
+ * <p>
+ * The table uses open addressing with linear probing. Hash codes are
+ * compatible with {@link String#hashCode()}.
+ *
+ * @author rasifix
+ */
+public final class SymbolTable {
+
+	static final int MAX_SYMBOLS = 2048;
+
+	static final int MAX_LENGTH = 128;
+
+	private final String[] symbols = new String[2 * MAX_SYMBOLS];
+
+	private final int[] hashes = new int[2 * MAX_SYMBOLS];
+
+	private final int mask = symbols.length - 1;
+
+	private int size;
+
+	/**
+	 * Returns the canonical String for the given characters.
+	 *
+	 * @param ch the buffer containing the name
+	 * @param offset the start of the name
+	 * @param length the length of the name
+	 * @return the canonical instance
+	 */
+	public String lookup(char[] ch, int offset, int length) {
+		if (length > MAX_LENGTH) {
+			return new String(ch, offset, length);
+		}
+		int hash = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			hash = 31 * hash + ch[i];
+		}
+		int index = mix(hash) & mask;
+		for (String symbol = symbols[index]; symbol != null; symbol = symbols[index]) {
+			if (hashes[index] == hash && matches(symbol, ch, offset, length)) {
+				return symbol;
+			}
+			index = (index + 1) & mask;
+		}
+		return add(index, hash, new String(ch, offset, length));
+	}
+
+	/**
+	 * Returns the canonical instance of the given String.
+	 *
+	 * @param name the name
+	 * @return the canonical instance
+	 */
+	public String lookup(String name) {
+		if (name.length() > MAX_LENGTH) {
+			return name;
+		}
+		final int hash = name.hashCode();
+		int index = mix(hash) & mask;
+		for (String symbol = symbols[index]; symbol != null; symbol = symbols[index]) {
+			if (hashes[index] == hash && symbol.equals(name)) {
+				return symbol;
+			}
+			index = (index + 1) & mask;
+		}
+		return add(index, hash, name);
+	}
+
+	/**
+	 * Removes all names from the table.
+	 */
+	public void clear() {
+		Arrays.fill(symbols, null);
+		size = 0;
+	}
+
+	private String add(int index, int hash, String symbol) {
+		if (size == MAX_SYMBOLS) {
+			clear();
+			index = mix(hash) & mask;
+		}
+		symbols[index] = symbol;
+		hashes[index] = hash;
+		size++;
+		return symbol;
+	}
+
+	private static boolean matches(String symbol, char[] ch, int offset, int length) {
+		if (symbol.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (symbol.charAt(i) != ch[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int mix(int hash) {
+		// spreads the bits of short names, whose hash codes differ mostly in the low bits
+		return hash ^ (hash >>> 16) ^ (hash >>> 8);
+	}
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output that encodes chars as UTF-8 directly into a byte buffer, which is
+ * written to an {@link OutputStream} or a {@link WritableByteChannel}
+ * whenever it is full. Unpaired surrogates are replaced by '?', as the
+ * UTF-8 encoder of the JDK does.
+ *
+ * @author rasifix
+ */
+public final class Utf8Output extends JsonOutput {
+
+	private OutputStream out;
+
+	private WritableByteChannel channel;
+
+	private final byte[] buffer;
+
+	/**
+	 * The buffer wrapped for writing to a channel.
+	 */
+	private final ByteBuffer wrapped;
+
+	/**
+	 * The buffer is flushed when pos exceeds this limit, so that a code
+	 * point can always be written.
+	 */
+	private final int limit;
+
+	private int pos;
+
+	/**
+	 * @param out the stream to write to
+	 * @param bufferSize the size of the buffer in bytes
+	 */
+	public Utf8Output(OutputStream out, int bufferSize) {
+		this(out, null, bufferSize);
+		if (out == null) {
+			throw new IllegalArgumentException("out cannot be null");
+		}
+	}
+
+	/**
+	 * @param channel the channel to write to
+	 * @param bufferSize the size of the buffer in bytes
+	 */
+	public Utf8Output(WritableByteChannel channel, int bufferSize) {
+		this(null, channel, bufferSize);
+		if (channel == null) {
+			throw new IllegalArgumentException("channel cannot be null");
+		}
+	}
+
+	private Utf8Output(OutputStream out, WritableByteChannel channel, int bufferSize) {
+		if (bufferSize < 16) {
+			throw new IllegalArgumentException("buffer size must be at least 16");
+		}
+		this.out = out;
+		this.channel = channel;
+		this.buffer = new byte[bufferSize];
+		this.wrapped = ByteBuffer.wrap(buffer);
+		this.limit = bufferSize - 4;
+	}
+
+	/**
+	 * Continues with another stream, keeping the buffer. Call
+	 * {@link #drain()} first so that nothing is left in the buffer.
+	 *
+	 * @param out the stream to write to from now on
+	 */
+	public void setOutputStream(OutputStream out) {
+		if (out == null) {
+			throw new IllegalArgumentException("out cannot be null");
+		}
+		this.out = out;
+		this.channel = null;
+	}
+
+	/**
+	 * Continues with another channel, keeping the buffer. Call
+	 * {@link #drain()} first so that nothing is left in the buffer.
+	 *
+	 * @param channel the channel to write to from now on
+	 */
+	public void setChannel(WritableByteChannel channel) {
+		if (channel == null) {
+			throw new IllegalArgumentException("channel cannot be null");
+		}
+		this.out = null;
+		this.channel = channel;
+	}
+
+	@Override
+	public void writeAscii(char c) throws IOException {
+		if (pos == buffer.length) {
+			flushBuffer();
+		}
+		buffer[pos++] = (byte) c;
+	}
+
+	@Override
+	public void writeAscii(char[] ch, int offset, int length) throws IOException {
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (pos == buffer.length) {
+				flushBuffer();
+			}
+			buffer[pos++] = (byte) ch[i];
+		}
+	}
+
+	@Override
+	public void write(String s, int start, int end) throws IOException {
+		final byte[] b = buffer;
+		int p = pos;
+		for (int i = start; i < end; i++) {
+			if (p > limit) {
+				pos = p;
+				flushBuffer();
+				p = 0;
+			}
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				b[p++] = (byte) c;
+			} else if (c < 0x800) {
+				b[p++] = (byte) (0xc0 | c >> 6);
+				b[p++] = (byte) (0x80 | c & 0x3f);
+			} else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+				b[p++] = (byte) (0xe0 | c >> 12);
+				b[p++] = (byte) (0x80 | c >> 6 & 0x3f);
+				b[p++] = (byte) (0x80 | c & 0x3f);
+			} else if (c <= Character.MAX_HIGH_SURROGATE && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, s.charAt(++i));
+				b[p++] = (byte) (0xf0 | codePoint >> 18);
+				b[p++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+				b[p++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+				b[p++] = (byte) (0x80 | codePoint & 0x3f);
+			} else {
+				b[p++] = '?';
+			}
+		}
+		pos = p;
+	}
+
+	@Override
+	public void writeEncoded(char[] chars, byte[] utf8) throws IOException {
+		int offset = 0;
+		while (offset < utf8.length) {
+			if (pos == buffer.length) {
+				flushBuffer();
+			}
+			int n = Math.min(utf8.length - offset, buffer.length - pos);
+			System.arraycopy(utf8, offset, buffer, pos, n);
+			pos += n;
+			offset += n;
+		}
+	}
+
+	@Override
+	public boolean isBuffered() {
+		return pos > 0;
+	}
+
+	@Override
+	public void drain() throws IOException {
+		if (pos > 0) {
+			flushBuffer();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		if (out != null) {
+			out.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+		if (out != null) {
+			out.close();
+		} else {
+			channel.close();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (out != null) {
+			out.write(buffer, 0, pos);
+		} else {
+			wrapped.clear();
+			wrapped.limit(pos);
+			while (wrapped.hasRemaining()) {
+				channel.write(wrapped);
+			}
+		}
+		pos = 0;
+	}
+
+}
@@ -0,0 +1,549 @@
+/*
+ * Copyright 2011 Simon Raess
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rasifix.saj.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import com.github.rasifix.saj.JsonContentHandler;
+
+/**
+ * Parser that tokenizes UTF-8 encoded bytes. Structural characters, literals
+ * and numbers are all ASCII in JSON, so they are recognized directly on the
+ * bytes. Only the contents of strings are decoded to chars, into a buffer
+ * that is reused for every string. Like {@link CharParser}, the input is
+ * read through a window of fixed size.
+ * <p>
+ * Besides reading from an {@link InputStream}, the input can be pushed to
+ * the parser in chunks (see {@link #feed(byte[], int, int)}). Incomplete
+ * tokens at the end of a chunk are kept until the next chunk arrives.
+ *
+ * @author rasifix
+ */
+public class Utf8Parser extends AbstractParser {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private static final byte[] TRUE_BYTES = { 't', 'r', 'u', 'e' };
+
+	private static final byte[] FALSE_BYTES = { 'f', 'a', 'l', 's', 'e' };
+
+	private static final byte[] NULL_BYTES = { 'n', 'u', 'l', 'l' };
+
+	private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	/**
+	 * The window, allocated when the first document is parsed.
+	 */
+	private byte[] buffer;
+
+	private char[] chars = new char[256];
+
+	private InputStream in;
+
+	private boolean feeding;
+
+	private boolean endOfInput;
+
+	/**
+	 * Number of bytes discarded from the window so far.
+	 */
+	private long offset;
+
+	private int pos;
+
+	private int limit;
+
+	private int tokenStart;
+
+	/**
+	 * Number of bytes of a string or number token that were scanned before
+	 * the parser ran out of fed input, 0 if no token is pending. Scanning
+	 * resumes there when more input arrives, like {@link #skipDepth} does
+	 * for skipped containers.
+	 */
+	private int tokenScanned;
+
+	/**
+	 * Whether the scanned part of a pending string contains an escape.
+	 */
+	private boolean tokenEscaped;
+
+	public Utf8Parser(JsonContentHandler handler) {
+		super(handler);
+	}
+
+	/**
+	 * Sets the size of the window through which the input is read. The window
+	 * grows temporarily if a single token does not fit into it.
+	 *
+	 * @param bufferSize the size of the window in bytes
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize < 16) {
+			throw new IllegalArgumentException("buffer size must be at least 16");
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Parses the JSON value read from the given stream. The stream is not closed.
+	 *
+	 * @param in the stream from which to parse
+	 * @param head bytes already read from the stream
+	 * @param headLength the number of valid bytes in head
+	 * @throws IOException if reading fails
+	 */
+	public void parse(InputStream in, byte[] head, int headLength) throws IOException {
+		if (buffer == null || buffer.length != bufferSize) {
+			buffer = new byte[bufferSize];
+		}
+		System.arraycopy(head, 0, buffer, 0, headLength);
+		this.in = in;
+		this.feeding = false;
+		this.offset = 0;
+		this.pos = 0;
+		this.limit = headLength;
+		this.tokenStart = 0;
+		this.tokenScanned = 0;
+		this.tokenEscaped = false;
+		try {
+			parseValue();
+		} finally {
+			this.in = null;
+		}
+	}
+
+	/**
+	 * Prepares the parser for a new document pushed through
+	 * {@link #feed(byte[], int, int)}.
+	 */
+	public void startFeeding() {
+		if (buffer == null || buffer.length != bufferSize) {
+			buffer = new byte[bufferSize];
+		}
+		this.in = null;
+		this.feeding = true;
+		this.endOfInput = false;
+		this.offset = 0;
+		this.pos = 0;
+		this.limit = 0;
+		this.tokenStart = 0;
+		this.tokenScanned = 0;
+		this.tokenEscaped = false;
+		start();
+	}
+
+	/**
+	 * Pushes the next chunk of input to the parser. All events for complete
+	 * tokens in the chunk are reported before this method returns.
+	 *
+	 * @param b the buffer containing the input
+	 * @param off the offset of the chunk in the buffer
+	 * @param len the length of the chunk
+	 */
+	public void feed(byte[] b, int off, int len) {
+		checkFeeding();
+		if (isStopped()) {
+			return;
+		}
+		ensureCapacity(len);
+		System.arraycopy(b, off, buffer, limit, len);
+		limit += len;
+		resumeFeeding();
+	}
+
+	/**
+	 * Pushes the remaining bytes of the given buffer to the parser.
+	 *
+	 * @param input the buffer containing the input
+	 */
+	public void feed(ByteBuffer input) {
+		checkFeeding();
+		if (isStopped()) {
+			input.position(input.limit());
+			return;
+		}
+		int len = input.remaining();
+		ensureCapacity(len);
+		input.get(buffer, limit, len);
+		limit += len;
+		resumeFeeding();
+	}
+
+	/**
+	 * Signals that no more input follows. Completes the current document.
+	 */
+	public void endOfInput() {
+		checkFeeding();
+		endOfInput = true;
+		resumeFeeding();
+		feeding = false;
+	}
+
+	private void checkFeeding() {
+		if (!feeding) {
+			throw new IllegalStateException("parser is not accepting input");
+		}
+	}
+
+	private void resumeFeeding() {
+		try {
+			resume();
+		} catch (IOException e) {
+			throw new IllegalStateException("unexpected I/O exception on pushed input", e);
+		}
+	}
+
+	/**
+	 * Makes room for len more bytes in the window, discarding the input
+	 * before the current token first.
+	 */
+	private void ensureCapacity(int len) {
+		if (limit + len <= buffer.length) {
+			return;
+		}
+		int keep = limit - tokenStart;
+		byte[] target = buffer;
+		if (keep + len > buffer.length) {
+			target = new byte[Math.max(buffer.length * 2, keep + len)];
+		}
+		System.arraycopy(buffer, tokenStart, target, 0, keep);
+		buffer = target;
+		offset += tokenStart;
+		pos -= tokenStart;
+		tokenStart = 0;
+		limit = keep;
+	}
+
+	/**
+	 * @return true if the parser is fed and the current chunk ends in the
+	 *         middle of a token
+	 */
+	private boolean awaitingInput() {
+		return feeding && !endOfInput;
+	}
+
+	/**
+	 * Reads more input into the window. Everything before the start of the
+	 * current token is discarded, if the token already fills the whole window
+	 * the window is enlarged.
+	 *
+	 * @return false if the end of the input is reached
+	 * @throws IOException if reading fails
+	 */
+	private boolean fill() throws IOException {
+		if (in == null) {
+			return false;
+		}
+		int keep = limit - tokenStart;
+		if (tokenStart > 0) {
+			System.arraycopy(buffer, tokenStart, buffer, 0, keep);
+			offset += tokenStart;
+			pos -= tokenStart;
+			tokenStart = 0;
+			limit = keep;
+		} else if (limit == buffer.length) {
+			byte[] newBuffer = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, limit);
+			buffer = newBuffer;
+		}
+		int read;
+		do {
+			read = in.read(buffer, limit, buffer.length - limit);
+		} while (read == 0);
+		if (read == -1) {
+			in = null;
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+
+	@Override
+	protected long position() {
+		return offset + tokenStart;
+	}
+
+	@Override
+	protected boolean skipContainer() throws IOException {
+		int p = pos;
+		int depth = skipDepth;
+		boolean inString = skipInString;
+		boolean escape = skipEscape;
+		for (;;) {
+			if (p == limit) {
+				// nothing skipped so far has to be kept in the window
+				tokenStart = p;
+				pos = p;
+				if (!fill()) {
+					if (awaitingInput()) {
+						skipDepth = depth;
+						skipInString = inString;
+						skipEscape = escape;
+						return false;
+					}
+					throw syntaxError("unterminated value");
+				}
+				p = pos;
+			}
+			byte c = buffer[p++];
+			if (inString) {
+				if (escape) {
+					escape = false;
+				} else if (c == '\\') {
+					escape = true;
+				} else if (c == '"') {
+					inString = false;
+				}
+			} else if (c == '"') {
+				inString = true;
+			} else if (c == '{' || c == '[') {
+				depth++;
+			} else if ((c == '}' || c == ']') && --depth == 0) {
+				tokenStart = p;
+				pos = p;
+				return true;
+			}
+		}
+	}
+
+	@Override
+	protected int nextToken() throws IOException {
+		int p = pos;
+		for (;;) {
+			if (p == limit) {
+				tokenStart = p;
+				pos = p;
+				if (!fill()) {
+					return awaitingInput() ? NEED_INPUT : EOF;
+				}
+				p = pos;
+			}
+			byte b = buffer[p];
+			tokenStart = p;
+			switch (b) {
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\r':
+				p++;
+				continue;
+			case '{':
+				pos = p + 1;
+				return BEGIN_OBJECT;
+			case '}':
+				pos = p + 1;
+				return END_OBJECT;
+			case '[':
+				pos = p + 1;
+				return BEGIN_ARRAY;
+			case ']':
+				pos = p + 1;
+				return END_ARRAY;
+			case ':':
+				pos = p + 1;
+				return COLON;
+			case ',':
+				pos = p + 1;
+				return COMMA;
+			case '"':
+				return string(p);
+			case 't':
+				return literal(p, TRUE_BYTES, TRUE);
+			case 'f':
+				return literal(p, FALSE_BYTES, FALSE);
+			case 'n':
+				return literal(p, NULL_BYTES, NULL);
+			case '-':
+			case '0':
+			case '1':
+			case '2':
+			case '3':
+			case '4':
+			case '5':
+			case '6':
+			case '7':
+			case '8':
+			case '9':
+				return number(p);
+			default:
+				throw syntaxError("unexpected byte 0x" + Integer.toHexString(b & 0xFF));
+			}
+		}
+	}
+
+	private int string(int start) throws IOException {
+		int p = start + Math.max(1, tokenScanned);
+		boolean escaped = tokenEscaped;
+		tokenScanned = 0;
+		tokenEscaped = false;
+		for (;;) {
+			if (p >= limit) {
+				int consumed = p - start;
+				if (!fill()) {
+					if (awaitingInput()) {
+						// the token is not scanned again when more input arrives
+						tokenScanned = consumed;
+						tokenEscaped = escaped;
+						pos = tokenStart;
+						return NEED_INPUT;
+					}
+					throw syntaxError("unterminated string");
+				}
+				start = tokenStart;
+				p = start + consumed;
+				continue;
+			}
+			byte b = buffer[p];
+			if (b == '"') {
+				break;
+			} else if (b == '\\') {
+				// the escaped byte is skipped, it may be a quote
+				escaped = true;
+				p++;
+			}
+			p++;
+		}
+		decode(start + 1, p);
+		if (escaped) {
+			// escape sequences are ASCII, decode them in place
+			textLength = StringDecoder.unescape(chars, 0, textLength, chars);
+			if (textLength < 0) {
+				throw syntaxError("invalid escape sequence");
+			}
+		}
+		pos = p + 1;
+		return STRING;
+	}
+
+	/**
+	 * Decodes the UTF-8 bytes in the given range of the window into
+	 * {@link #chars}. Malformed input is replaced by U+FFFD.
+	 */
+	private void decode(int from, int to) {
+		// UTF-16 never needs more chars than UTF-8 needs bytes
+		if (chars.length < to - from) {
+			chars = new char[Math.max(to - from, chars.length * 2)];
+		}
+		final byte[] buf = buffer;
+		final char[] c = chars;
+		int n = 0;
+		int i = from;
+		while (i < to) {
+			int b0 = buf[i];
+			if (b0 >= 0) {
+				c[n++] = (char) b0;
+				i++;
+				continue;
+			}
+			b0 &= 0xFF;
+			if (b0 >= 0xC2 && b0 <= 0xDF && i + 1 < to && isContinuation(buf[i + 1])) {
+				c[n++] = (char) (((b0 & 0x1F) << 6) | (buf[i + 1] & 0x3F));
+				i += 2;
+			} else if (b0 >= 0xE0 && b0 <= 0xEF && i + 2 < to
+					&& isContinuation(buf[i + 1]) && isContinuation(buf[i + 2])) {
+				int cp = ((b0 & 0x0F) << 12) | ((buf[i + 1] & 0x3F) << 6) | (buf[i + 2] & 0x3F);
+				if (cp < 0x800 || (cp >= 0xD800 && cp <= 0xDFFF)) {
+					c[n++] = REPLACEMENT_CHAR;
+				} else {
+					c[n++] = (char) cp;
+				}
+				i += 3;
+			} else if (b0 >= 0xF0 && b0 <= 0xF4 && i + 3 < to
+					&& isContinuation(buf[i + 1]) && isContinuation(buf[i + 2]) && isContinuation(buf[i + 3])) {
+				int cp = ((b0 & 0x07) << 18) | ((buf[i + 1] & 0x3F) << 12)
+						| ((buf[i + 2] & 0x3F) << 6) | (buf[i + 3] & 0x3F);
+				if (cp < 0x10000 || cp > 0x10FFFF) {
+					c[n++] = REPLACEMENT_CHAR;
+				} else {
+					cp -= 0x10000;
+					c[n++] = (char) (0xD800 + (cp >>> 10));
+					c[n++] = (char) (0xDC00 + (cp & 0x3FF));
+				}
+				i += 4;
+			} else {
+				c[n++] = REPLACEMENT_CHAR;
+				i++;
+			}
+		}
+		text = c;
+		textOffset = 0;
+		textLength = n;
+	}
+
+	private int literal(int start, byte[] expected, int token) throws IOException {
+		while (limit - start < expected.length) {
+			if (!fill()) {
+				if (awaitingInput()) {
+					pos = tokenStart;
+					return NEED_INPUT;
+				}
+				throw syntaxError("invalid literal");
+			}
+			start = tokenStart;
+		}
+		for (int i = 1; i < expected.length; i++) {
+			if (buffer[start + i] != expected[i]) {
+				throw syntaxError("invalid literal");
+			}
+		}
+		pos = start + expected.length;
+		return token;
+	}
+
+	private int number(int start) throws IOException {
+		// find the extent of the number first, so that it is available as one range
+		int end = start + Math.max(1, tokenScanned);
+		tokenScanned = 0;
+		for (;;) {
+			if (end == limit) {
+				int consumed = end - start;
+				if (!fill()) {
+					if (awaitingInput()) {
+						tokenScanned = consumed;
+						pos = tokenStart;
+						return NEED_INPUT;
+					}
+					break;
+				}
+				start = tokenStart;
+				end = start + consumed;
+			}
+			if (!isNumberByte(buffer[end])) {
+				break;
+			}
+			end++;
+		}
+
+		// numbers are pure ASCII, widen them for the grammar (see NumberParser)
+		decode(start, end);
+		pos = end;
+		return NUMBER;
+	}
+
+	private static boolean isNumberByte(byte b) {
+		return b >= '0' && b <= '9' || b == '.' || b == 'e' || b == 'E' || b == '-' || b == '+';
+	}
+
+	private static boolean isContinuation(byte b) {
+		return (b & 0xC0) == 0x80;
+	}
+
+}
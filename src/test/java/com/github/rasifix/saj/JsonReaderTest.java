@@ -1,9 +1,20 @@
 package com.github.rasifix.saj;
 
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import static org.easymock.EasyMock.createStrictMock;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
 
 import org.easymock.EasyMock;
 import org.junit.Before;
@@ -51,11 +62,51 @@ public class JsonReaderTest {
 		parse("[true,\"foobar\",2.0,null]");
 	}
 	
+	@Test
+	public void testParseIntegers() throws Exception {
+		startArray();
+		value(0);
+		value(-2147483648);
+		value(2147483648L);
+		value(-9223372036854775808L);
+		value(new BigDecimal("9223372036854775808"));
+		endArray();
+		
+		parse("[0,-2147483648,2147483648,-9223372036854775808,9223372036854775808]");
+	}
+	
+	@Test
+	public void testParseDecimals() throws Exception {
+		startArray();
+		value(0.1);
+		value(-1.5e-300);
+		value(1.7976931348623157e308);
+		value(3.141592653589793);
+		endArray();
+		
+		parse("[0.1,-1.5e-300,1.7976931348623157e308,3.14159265358979323846264338327950288]");
+	}
+	
+	@Test
+	public void testParseBigDecimals() throws Exception {
+		startArray();
+		value(new BigDecimal("0.1"));
+		value(new BigDecimal("1.00000000000000000001e3"));
+		value(1);
+		endArray();
+		
+		replay();
+		JsonReader reader = new JsonReader(handler);
+		reader.setUseBigDecimal(true);
+		reader.parseJson("[0.1,1.00000000000000000001e3,1]");
+		verify();
+	}
+	
 	@Test
 	public void testParseObject() throws Exception {
 		startObject();
 		startMember("foo");
-		value(1.0);
+		value(1);
 		endMember();
 		endObject();
 		
@@ -67,11 +118,11 @@ public class JsonReaderTest {
 		startObject();
 			startMember("a");
 				startArray();
-					value(1.0);
-					value(2.0);
+					value(1);
+					value(2);
 					startArray();
-						value(3.0);
-						value(4.0);
+						value(3);
+						value(4);
 						startObject();
 							startMember("x");
 								nullValue();
@@ -82,7 +133,7 @@ public class JsonReaderTest {
 						startMember("b");
 							startObject();
 								startMember("c");
-									value(1.0);
+									value(1);
 								endMember();
 								startMember("d");
 									startArray();
@@ -99,7 +150,285 @@ public class JsonReaderTest {
 		
 		parse("{\"a\":[1,2,[3,4,{\"x\":null}],{\"b\":{\"c\":1,\"d\":[null,true]}}]}");
 	}
+
+	@Test
+	public void testParseFromString() throws Exception {
+		startArray();
+		value("foo");
+		startObject();
+		endObject();
+		endArray();
+
+		replay();
+		new JsonReader(handler).parseJson(" [ \"foo\", {} ] ");
+		verify();
+	}
+
+	@Test
+	public void testTokensSpanningBufferBoundaries() throws Exception {
+		startObject();
+		startMember("a rather long member name");
+		value("a string value that does not fit into the buffer");
+		endMember();
+		startMember("number");
+		value(12345.678);
+		endMember();
+		startMember("flag");
+		value(false);
+		endMember();
+		endObject();
+
+		replay();
+		JsonReader reader = new JsonReader(handler);
+		reader.setBufferSize(16);
+		reader.parseJson(new StringReader("{\"a rather long member name\":\"a string value that does not fit into the buffer\","
+				+ "   \"number\" : 12345.678, \"flag\":false}"));
+		verify();
+	}
+
+	@Test
+	public void testParseUtf8Stream() throws Exception {
+		startObject();
+		startMember("caf\u00e9");
+		value("\u20ac \ud83d\ude00");
+		endMember();
+		endObject();
+
+		replay();
+		new JsonReader(handler).parseJson(new ByteArrayInputStream("{\"caf\u00e9\":\"\u20ac \ud83d\ude00\"}".getBytes("UTF-8")));
+		verify();
+	}
+
+	@Test
+	public void testParseUtf16Stream() throws Exception {
+		startArray();
+		value("caf\u00e9");
+		endArray();
+
+		replay();
+		new JsonReader(handler).parseJson(new ByteArrayInputStream("[\"caf\u00e9\"]".getBytes("UTF-16LE")));
+		verify();
+	}
+
+	@Test
+	public void testParseMappedFile() throws Exception {
+		File file = File.createTempFile("saj", ".json");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write("{\"a\":[true,\"x\"]}".getBytes("UTF-8"));
+			out.close();
+
+			startObject();
+			startMember("a");
+			startArray();
+			value(true);
+			value("x");
+			endArray();
+			endMember();
+			endObject();
+
+			replay();
+			new JsonReader(handler).parseJson(file);
+			verify();
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testCharactersHandler() throws Exception {
+		CharactersRecorder recorder = new CharactersRecorder();
+		new JsonReader(recorder).parseJson("{\"a\":\"foo\",\"bc\":[\"bar\",1]}");
+		assertEquals("{a=foo,bc=[bar,1]}", recorder.log.toString());
+		
+		recorder = new CharactersRecorder();
+		new JsonReader(recorder).parseJson(new ByteArrayInputStream("[\"caf\u00e9\"]".getBytes("UTF-8")));
+		assertEquals("[caf\u00e9]", recorder.log.toString());
+	}
+
+	@Test
+	public void testEscapeSequences() throws Exception {
+		String json = "{\"a\\tb\":[\"quote \\\" backslash \\\\ slash \\/\", \"\\b\\f\\n\\r\\t\", \"caf\\u00e9 \\uD834\\uDD1E\"]}";
+		startObject();
+		startMember("a\tb");
+		startArray();
+		value("quote \" backslash \\ slash /");
+		value("\b\f\n\r\t");
+		value("caf\u00e9 \uD834\uDD1E");
+		endArray();
+		endMember();
+		endObject();
+		
+		parse(json);
+	}
+	
+	@Test(expected = JsonParseException.class)
+	public void testInvalidEscapeSequenceIsRejected() throws Exception {
+		parse("\"\\x\"");
+	}
+	
+	@Test
+	public void testIncludePaths() throws Exception {
+		startObject();
+		startMember("header");
+		startObject();
+		startMember("type");
+		value("order");
+		endMember();
+		endObject();
+		endMember();
+		startMember("items");
+		startArray();
+		startObject();
+		startMember("id");
+		value(1);
+		endMember();
+		endObject();
+		startObject();
+		endObject();
+		endArray();
+		endMember();
+		endObject();
+		replay();
+		
+		JsonReader reader = new JsonReader(handler);
+		reader.setIncludePaths("$.header.type", "$.items[*].id");
+		reader.parseJson("{\"header\":{\"version\":2,\"type\":\"order\",\"tags\":[\"}\",{}]},"
+				+ "\"body\":{\"text\":\"]\\\"[\"},\"items\":[{\"id\":1,\"x\":[]},{\"y\":2}]}");
+		verify();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullIncludePathsAreRejected() throws Exception {
+		new JsonReader(handler).setIncludePaths((String[]) null);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullIncludePathIsRejected() throws Exception {
+		new JsonReader(handler).setIncludePaths("$.a", null);
+	}
+	
+	@Test
+	public void testMemberNamesAreInterned() throws Exception {
+		String json = "[{\"key\":1},{\"key\":2}]";
+		
+		SimpleContentHandler handler = new SimpleContentHandler();
+		new JsonReader(handler).parseJson(json);
+		assertSame(firstKey(handler, 0), firstKey(handler, 1));
+		
+		handler = new SimpleContentHandler();
+		new JsonReader(handler).parseJson(new ByteArrayInputStream(json.getBytes("UTF-8")));
+		assertSame(firstKey(handler, 0), firstKey(handler, 1));
+		
+		handler = new SimpleContentHandler();
+		JsonReader reader = new JsonReader(handler);
+		reader.setInternMemberNames(false);
+		reader.parseJson(json);
+		assertEquals(firstKey(handler, 0), firstKey(handler, 1));
+		assertNotSame(firstKey(handler, 0), firstKey(handler, 1));
+	}
+	
+	private static String firstKey(SimpleContentHandler handler, int index) {
+		List<?> list = (List<?>) handler.getResult();
+		return (String) ((Map<?, ?>) list.get(index)).keySet().iterator().next();
+	}
+
+	@Test
+	public void testStopFromHandler() throws Exception {
+		final StringBuilder log = new StringBuilder();
+		final JsonReader[] reader = new JsonReader[1];
+		reader[0] = new JsonReader(new SimpleContentHandler() {
+			@Override
+			public void value(String value) {
+				log.append(value);
+				reader[0].stop();
+			}
+		});
+		reader[0].setBufferSize(16);
+		
+		StringBuilder json = new StringBuilder("{\"header\":{\"type\":\"order\"},\"body\":[");
+		for (int i = 0; i < 1000; i++) {
+			json.append("\"line\",");
+		}
+		// never reached
+		json.append("}");
+		
+		reader[0].parseJson(json.toString());
+		assertEquals("order", log.toString());
+		
+		log.setLength(0);
+		ByteArrayInputStream in = new ByteArrayInputStream(json.toString().getBytes("UTF-8"));
+		reader[0].parseJson(in);
+		assertEquals("order", log.toString());
+		assertTrue(in.available() > 0);
+	}
+
+	@Test
+	public void testRecords() throws Exception {
+		JsonRecordHandler records = createStrictMock(JsonRecordHandler.class);
+		records.startRecord();
+		records.startObject();
+		records.startMember("a");
+		records.value(1);
+		records.endMember();
+		records.endObject();
+		records.endRecord();
+		records.startRecord();
+		records.value("b");
+		records.endRecord();
+		records.startRecord();
+		records.startArray();
+		records.endArray();
+		records.endRecord();
+		EasyMock.replay(records);
+		
+		JsonReader reader = new JsonReader(records);
+		reader.setRecords(true);
+		reader.parseJson(new ByteArrayInputStream("{\"a\":1}\n\"b\"\r\n\n[]\n".getBytes("UTF-8")));
+		reader.parseJson("  ");
+		EasyMock.verify(records);
+	}
+	
+	@Test
+	public void testRecordsWithoutRecordHandler() throws Exception {
+		value(1);
+		value(true);
+		replay();
+		
+		JsonReader reader = new JsonReader(handler);
+		reader.setRecords(true);
+		reader.parseJson("1\ntrue");
+		verify();
+	}
 	
+	@Test(expected = JsonParseException.class)
+	public void testIncompleteRecordIsRejected() throws Exception {
+		startObject();
+		endObject();
+		startArray();
+		replay();
+		
+		JsonReader reader = new JsonReader(handler);
+		reader.setRecords(true);
+		reader.parseJson("{}\n[\n");
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testTrailingCommaIsRejected() throws Exception {
+		startArray();
+		value(1);
+
+		parse("[1,]");
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testTrailingContentIsRejected() throws Exception {
+		startObject();
+		endObject();
+
+		parse("{} {}");
+	}
+
 	private void startObject() {
 		handler.startObject();
 	}
@@ -140,8 +469,106 @@ public class JsonReaderTest {
 		handler.value(value);
 	}
 	
+	private void value(long value) {
+		handler.value(value);
+	}
+	
+	private void value(BigDecimal value) {
+		handler.value(value);
+	}
+	
 	private void value(String value) {
 		handler.value(value);
 	}
 	
+	private static class CharactersRecorder implements JsonCharactersHandler {
+		
+		private final StringBuilder log = new StringBuilder();
+		
+		private boolean first = true;
+		
+		private void separate() {
+			if (!first) {
+				log.append(',');
+			}
+			first = false;
+		}
+		
+		public void startObject() {
+			separate();
+			log.append('{');
+			first = true;
+		}
+		
+		public void startMember(char[] ch, int start, int length) {
+			separate();
+			log.append(ch, start, length).append('=');
+			first = true;
+		}
+		
+		public void startMember(String name) {
+			fail("String callback invoked");
+		}
+		
+		public void endMember() {
+			first = false;
+		}
+		
+		public void endObject() {
+			log.append('}');
+			first = false;
+		}
+		
+		public void startArray() {
+			separate();
+			log.append('[');
+			first = true;
+		}
+		
+		public void endArray() {
+			log.append(']');
+			first = false;
+		}
+		
+		public void value(char[] ch, int start, int length) {
+			separate();
+			log.append(ch, start, length);
+		}
+		
+		public void value(String value) {
+			fail("String callback invoked");
+		}
+		
+		public void value(double value) {
+			separate();
+			log.append(value);
+		}
+		
+		public void value(int value) {
+			separate();
+			log.append(value);
+		}
+		
+		public void value(long value) {
+			separate();
+			log.append(value);
+		}
+		
+		public void value(BigDecimal value) {
+			separate();
+			log.append(value);
+		}
+		
+		public void value(boolean value) {
+			separate();
+			log.append(value);
+		}
+		
+		public void nullValue() {
+			separate();
+			log.append("null");
+		}
+		
+	}
+	
 }
@@ -0,0 +1,84 @@
+package com.github.rasifix.saj;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class JsonWriterPoolTest {
+	
+	private final JsonWriterPool pool = new JsonWriterPool(2);
+	
+	@Test
+	public void testWritersAreReused() throws Exception {
+		StringWriter first = new StringWriter();
+		JsonWriter writer = pool.acquire(first);
+		writer.setPrettyPrint(true);
+		writer.startArray();
+		writer.endArray();
+		writer.flush();
+		pool.release(writer);
+		
+		StringWriter second = new StringWriter();
+		assertSame(writer, pool.acquire(second));
+		writer.startArray();
+		writer.value(1);
+		writer.endArray();
+		writer.flush();
+		
+		assertEquals("[\n]", first.toString());
+		assertEquals("[1]", second.toString());
+	}
+	
+	@Test
+	public void testUnflushedOutputIsWrittenOnRelease() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonWriter writer = pool.acquire(out);
+		writer.startObject();
+		writer.member("secret", "user1");
+		writer.endObject();
+		pool.release(writer);
+		
+		assertEquals("{\"secret\":\"user1\"}", new String(out.toByteArray(), "UTF-8"));
+		
+		ByteArrayOutputStream next = new ByteArrayOutputStream();
+		assertSame(writer, pool.acquire(next));
+		assertEquals(0, next.size());
+	}
+	
+	@Test
+	public void testWriterIsDiscardedIfReleaseFails() throws Exception {
+		JsonWriter writer = pool.acquire(new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("closed");
+			}
+		});
+		writer.value(1);
+		try {
+			pool.release(writer);
+			fail("expected RuntimeIOException");
+		} catch (RuntimeIOException e) {
+			// expected
+		}
+		
+		assertNotSame(writer, pool.acquire(new StringWriter()));
+	}
+	
+	@Test
+	public void testIncompleteWritersAreDiscarded() throws Exception {
+		JsonWriter writer = pool.acquire(new StringWriter());
+		writer.startObject();
+		pool.release(writer);
+		
+		assertNotSame(writer, pool.acquire(new StringWriter()));
+	}
+	
+}
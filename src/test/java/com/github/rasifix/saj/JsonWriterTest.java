@@ -2,7 +2,10 @@ package com.github.rasifix.saj;
 
 import static junit.framework.Assert.assertEquals;
 
+import java.io.ByteArrayOutputStream;
 import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
 
 import org.junit.Test;
 
@@ -130,6 +133,20 @@ public class JsonWriterTest {
 		assertResult("[5,false,6.4,\"HELLO\"]");
 	}
 	
+	@Test
+	public void testLongAndBigDecimalValues() throws Exception {
+		startObject();
+		startMember("long");
+		writer.value(5000000000L);
+		endMember();
+		startMember("decimal");
+		writer.value(new BigDecimal("1.10"));
+		endMember();
+		endObject();
+		
+		assertResult("{\"long\":5000000000,\"decimal\":1.10}");
+	}
+	
 	@Test
 	public void testObjectWithArrayMember() throws Exception {
 		startObject();
@@ -166,4 +183,212 @@ public class JsonWriterTest {
 		assertResult("[{\"a\":1,\"b\":2},{\"a\":1,\"b\":2}]");
 	}
 	
+	@Test
+	public void testPrettyPrint() throws Exception {
+		writer.setPrettyPrint(true);
+		startObject();
+		member("a", 1);
+		startMember("b");
+		startArray();
+		value(1);
+		startObject();
+		endObject();
+		startObject();
+		member("c", "d");
+		endObject();
+		endArray();
+		endMember();
+		endObject();
+		
+		assertResult("{\n\t\"a\":1,\n\t\"b\":[\n\t\t1,\n\t\t{\n\t\t},\n\t\t{\n\t\t\t\"c\":\"d\"\n\t\t}\n\t]\n}");
+	}
+	
+	@Test
+	public void testDeepNesting() throws Exception {
+		writer.setPrettyPrint(true);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			startArray();
+			expected.append(i > 0 ? "\n" : "").append(tabs(i)).append('[');
+		}
+		for (int i = 39; i >= 0; i--) {
+			endArray();
+			expected.append('\n').append(tabs(i)).append(']');
+		}
+		
+		assertResult(expected.toString());
+	}
+	
+	private static String tabs(int count) {
+		StringBuilder tabs = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			tabs.append('\t');
+		}
+		return tabs.toString();
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testMemberInArrayIsRejected() throws Exception {
+		startArray();
+		startMember("a");
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testValueInObjectIsRejected() throws Exception {
+		startObject();
+		writer.nullValue();
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testEndObjectInMemberIsRejected() throws Exception {
+		startObject();
+		startMember("a");
+		endObject();
+	}
+	
+	@Test
+	public void testEscaping() throws Exception {
+		startArray();
+		value("\"\\</a>\b\t\n\f\r\u0001\u0085\u2028 / \u00e9");
+		endArray();
+		
+		assertResult("[\"\\\"\\\\<\\/a>\\b\\t\\n\\f\\r\\u0001\\u0085\\u2028 / \u00e9\"]");
+	}
+	
+	@Test
+	public void testMemberNamesAreEscaped() throws Exception {
+		startObject();
+		member("say \"hi\"\n", "</script>");
+		endObject();
+		
+		assertResult("{\"say \\\"hi\\\"\\n\":\"<\\/script>\"}");
+	}
+	
+	@Test
+	public void testPreEncodedNames() throws Exception {
+		JsonWriter.Name id = new JsonWriter.Name("id");
+		JsonWriter.Name text = new JsonWriter.Name("t\u00e9xt \"1\"");
+		writer.startArray();
+		for (int i = 0; i < 2; i++) {
+			writer.startObject();
+			writer.member(id, i);
+			writer.member(text, "x");
+			writer.endObject();
+		}
+		writer.endArray();
+		
+		assertResult("[{\"id\":0,\"t\u00e9xt \\\"1\\\"\":\"x\"},{\"id\":1,\"t\u00e9xt \\\"1\\\"\":\"x\"}]");
+	}
+	
+	@Test
+	public void testPreEncodedNamesInUtf8() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonWriter utf8Writer = new JsonWriter(out);
+		utf8Writer.startObject();
+		utf8Writer.member(new JsonWriter.Name("\u4e2d\u2028"), true);
+		utf8Writer.endObject();
+		utf8Writer.flush();
+		
+		assertEquals("{\"\u4e2d\\u2028\":true}", new String(out.toByteArray(), "UTF-8"));
+	}
+	
+	@Test
+	public void testUtf8OutputStream() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonWriter utf8Writer = new JsonWriter(out);
+		utf8Writer.startObject();
+		utf8Writer.member("text", "\u00e4\u4e2d\ud83d\ude00\u2028\ud800");
+		utf8Writer.member("number", -2147483648);
+		utf8Writer.endObject();
+		utf8Writer.flush();
+		
+		assertEquals("{\"text\":\"\u00e4\u4e2d\ud83d\ude00\\u2028?\",\"number\":-2147483648}", new String(out.toByteArray(), "UTF-8"));
+	}
+	
+	@Test
+	public void testWritableByteChannel() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonWriter utf8Writer = new JsonWriter(Channels.newChannel(out));
+		utf8Writer.startArray();
+		StringBuilder expected = new StringBuilder("[");
+		for (int i = 0; i < 5000; i++) {
+			utf8Writer.value("\u00e9" + i);
+			expected.append(i > 0 ? "," : "").append("\"\u00e9").append(i).append('"');
+		}
+		utf8Writer.endArray();
+		utf8Writer.close();
+		
+		assertEquals(expected.append(']').toString(), new String(out.toByteArray(), "UTF-8"));
+	}
+	
+	@Test
+	public void testReset() throws Exception {
+		startArray();
+		value(1);
+		endArray();
+		writer.flush();
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.reset(out);
+		writer.startArray();
+		writer.value("\u00e9");
+		writer.endArray();
+		writer.flush();
+		
+		StringWriter next = new StringWriter();
+		writer.reset(next);
+		writer.startObject();
+		writer.endObject();
+		writer.close();
+		
+		assertEquals("[1]", result.toString());
+		assertEquals("[\"\u00e9\"]", new String(out.toByteArray(), "UTF-8"));
+		assertEquals("{}", next.toString());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testResetOfIncompleteDocumentIsRejected() throws Exception {
+		startObject();
+		startMember("a");
+		writer.reset(new StringWriter());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testResetOfUnflushedDocumentIsRejected() throws Exception {
+		startArray();
+		endArray();
+		writer.reset(new StringWriter());
+	}
+	
+	@Test
+	public void testShortestDoubles() throws Exception {
+		startArray();
+		value(1.0E23);
+		value(0.002);
+		value(100.0);
+		value(-0.0);
+		value(1.0E7);
+		value(Double.MIN_VALUE);
+		value(Double.MAX_VALUE);
+		endArray();
+		
+		assertResult("[1.0E23,0.002,100.0,-0.0,1.0E7,4.9E-324,1.7976931348623157E308]");
+	}
+	
+	@Test
+	public void testDecimalPlaces() throws Exception {
+		writer.setDecimalPlaces(2);
+		startArray();
+		value(1234.5);
+		value(0.125);
+		value(0.375);
+		value(-0.001);
+		value(-2.675);
+		value(1.0E20);
+		value(7);
+		endArray();
+		
+		assertResult("[1234.50,0.12,0.38,0.00,-2.67,100000000000000000000.00,7]");
+	}
+	
 }
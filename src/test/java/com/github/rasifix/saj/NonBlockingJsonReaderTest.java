@@ -0,0 +1,210 @@
+package com.github.rasifix.saj;
+
+import static junit.framework.Assert.assertEquals;
+import static org.easymock.EasyMock.createStrictMock;
+
+import java.nio.ByteBuffer;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NonBlockingJsonReaderTest {
+
+	private JsonContentHandler handler;
+
+	private NonBlockingJsonReader reader;
+
+	@Before
+	public void beforeTest() {
+		handler = createStrictMock(JsonContentHandler.class);
+		reader = new NonBlockingJsonReader(handler);
+	}
+
+	private void replay() {
+		EasyMock.replay(handler);
+	}
+
+	private void verify() {
+		EasyMock.verify(handler);
+	}
+
+	private void feed(String chunk) throws Exception {
+		reader.feed(ByteBuffer.wrap(chunk.getBytes("UTF-8")));
+	}
+
+	@Test
+	public void testFeedByteByByte() throws Exception {
+		handler.startObject();
+		handler.startMember("n\u00e4me");
+		handler.value("v\u00e4lue");
+		handler.endMember();
+		handler.startMember("list");
+		handler.startArray();
+		handler.value(12.5);
+		handler.value(true);
+		handler.nullValue();
+		handler.endArray();
+		handler.endMember();
+		handler.endObject();
+		replay();
+
+		byte[] json = "{\"n\u00e4me\":\"v\u00e4lue\", \"list\":[12.5,true,null]}".getBytes("UTF-8");
+		for (int i = 0; i < json.length; i++) {
+			reader.feed(json, i, 1);
+		}
+		reader.endOfInput();
+		verify();
+	}
+
+	@Test
+	public void testEventsAreReportedBeforeEndOfInput() throws Exception {
+		handler.startArray();
+		handler.value(1);
+		replay();
+
+		feed("[1,");
+		feed("2");
+		verify();
+	}
+
+	@Test
+	public void testTokensSplitAcrossChunks() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append("abcdefgh");
+		}
+		handler.startArray();
+		handler.value(text + "\"" + text + "\n");
+		handler.value(123456789);
+		handler.endArray();
+		replay();
+
+		feed("[\"");
+		for (int i = 0; i < text.length(); i += 100) {
+			feed(text.substring(i, i + 100));
+		}
+		feed("\\");
+		feed("\"");
+		feed(text.toString());
+		feed("\\n\",1234");
+		feed("5678");
+		feed("9]");
+		reader.endOfInput();
+		verify();
+	}
+
+	@Test
+	public void testIncludePaths() throws Exception {
+		handler.startObject();
+		handler.startMember("a");
+		handler.value(1);
+		handler.endMember();
+		handler.endObject();
+		replay();
+
+		reader.setIncludePaths("$.a");
+		feed("{\"a\":1,");
+		feed("\"b\":{\"c\":[2]}}");
+		reader.endOfInput();
+		verify();
+	}
+
+	@Test
+	public void testIncludePathsChangedWhileFeedingApplyAfterReset() throws Exception {
+		handler.startObject();
+		handler.startMember("a");
+		handler.value(1);
+		handler.endMember();
+		handler.endObject();
+		handler.startObject();
+		handler.startMember("b");
+		handler.value(2);
+		handler.endMember();
+		handler.endObject();
+		replay();
+
+		feed("{\"a\":1");
+		reader.setIncludePaths("$.b");
+		feed("}");
+		reader.endOfInput();
+		reader.reset();
+		feed("{\"a\":1,\"b\":2}");
+		reader.endOfInput();
+		verify();
+	}
+
+	@Test
+	public void testReset() throws Exception {
+		handler.value("a");
+		handler.value("b");
+		replay();
+
+		feed("\"a\"");
+		reader.endOfInput();
+		reader.reset();
+		feed("\"b\"");
+		reader.endOfInput();
+		verify();
+	}
+
+	@Test
+	public void testStopDiscardsRemainingInput() throws Exception {
+		final StringBuilder log = new StringBuilder();
+		final NonBlockingJsonReader[] stoppable = new NonBlockingJsonReader[1];
+		stoppable[0] = new NonBlockingJsonReader(new SimpleContentHandler() {
+			@Override
+			public void value(String value) {
+				log.append(value);
+				stoppable[0].stop();
+			}
+		});
+
+		stoppable[0].feed(ByteBuffer.wrap("[\"a\",\"b\"".getBytes("UTF-8")));
+		stoppable[0].feed(ByteBuffer.wrap("}}} not json".getBytes("UTF-8")));
+		stoppable[0].endOfInput();
+		assertEquals("a", log.toString());
+
+		stoppable[0].reset();
+		stoppable[0].feed(ByteBuffer.wrap("\"c\"".getBytes("UTF-8")));
+		stoppable[0].endOfInput();
+		assertEquals("ac", log.toString());
+	}
+
+	@Test
+	public void testRecords() throws Exception {
+		handler.value(12);
+		handler.startArray();
+		handler.endArray();
+		handler.value(3);
+		replay();
+
+		reader.setRecords(true);
+		feed("1");
+		feed("2\n[");
+		feed("]\n");
+		feed("3");
+		reader.endOfInput();
+		verify();
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testIncompleteInput() throws Exception {
+		handler.startArray();
+		replay();
+
+		feed("[");
+		reader.endOfInput();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFeedAfterEndOfInput() throws Exception {
+		handler.nullValue();
+		replay();
+
+		feed("null");
+		reader.endOfInput();
+		feed("null");
+	}
+
+}
@@ -0,0 +1,125 @@
+package com.github.rasifix.saj;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelArrayReaderTest {
+
+	private ExecutorService executor;
+
+	private ParallelArrayReader<SimpleContentHandler> reader;
+
+	@Before
+	public void beforeTest() {
+		executor = Executors.newFixedThreadPool(4);
+		reader = new ParallelArrayReader<SimpleContentHandler>(executor, new ParallelArrayReader.HandlerFactory<SimpleContentHandler>() {
+			public SimpleContentHandler createHandler() {
+				return new SimpleContentHandler();
+			}
+		});
+		reader.setMinChunkSize(1);
+	}
+
+	@After
+	public void afterTest() {
+		executor.shutdown();
+	}
+
+	private List<Object> parse(String json) {
+		List<Object> elements = new ArrayList<Object>();
+		for (SimpleContentHandler handler : reader.parse(json)) {
+			elements.addAll((List<?>) handler.getResult());
+		}
+		return elements;
+	}
+
+	private static List<?> parseSequentially(String json) throws Exception {
+		SimpleContentHandler handler = new SimpleContentHandler();
+		new JsonReader(handler).parseJson(json);
+		return (List<?>) handler.getResult();
+	}
+
+	@Test
+	public void testElementsAreDeliveredInOrder() throws Exception {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < 1000; i++) {
+			json.append(i > 0 ? ", " : "").append("{\"id\":").append(i).append(",\"tags\":[\"a\",{\"b\":null}]}");
+		}
+		json.append("]");
+		reader.setChunkCount(8);
+
+		assertEquals(parseSequentially(json.toString()), parse(json.toString()));
+		assertTrue(reader.parse(json.toString()).size() > 1);
+	}
+
+	@Test
+	public void testWrongBoundaryGuessesAreCorrected() throws Exception {
+		// every comma followed by '{' is inside a string or a nested value
+		String json = "[{\"s\":\",{,{,{,{,{,{\",\"o\":{\"x\":[{},{},{},{}]}},{\"s\":\"},{\"}]";
+		for (int chunks = 1; chunks <= json.length(); chunks++) {
+			reader.setChunkCount(chunks);
+			assertEquals(parseSequentially(json), parse(json));
+		}
+	}
+
+	@Test
+	public void testEmptyArray() throws Exception {
+		reader.setChunkCount(4);
+		assertEquals(0, parse(" [ ] ").size());
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testObjectIsRejected() throws Exception {
+		parse("{\"a\":1}");
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testInvalidElementIsRejected() throws Exception {
+		reader.setChunkCount(4);
+		parse("[{\"a\":1},{\"a\":2},{\"a\":tru},{\"a\":4}]");
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testTrailingContentIsRejected() throws Exception {
+		reader.setChunkCount(4);
+		parse("[{\"a\":1},{\"a\":2}],{\"a\":3}");
+	}
+
+	@Test
+	public void testInterruptedChunkStopsBeforeNextElement() throws Exception {
+		final AtomicInteger values = new AtomicInteger();
+		reader = new ParallelArrayReader<SimpleContentHandler>(executor, new ParallelArrayReader.HandlerFactory<SimpleContentHandler>() {
+			public SimpleContentHandler createHandler() {
+				return new SimpleContentHandler() {
+					@Override
+					public void value(int value) {
+						values.incrementAndGet();
+						if (value == 2) {
+							// as if the chunk was cancelled
+							Thread.currentThread().interrupt();
+						}
+					}
+				};
+			}
+		});
+		reader.setChunkCount(1);
+		try {
+			parse("[1,2,3,4]");
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals(2, values.get());
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package com.github.rasifix.saj;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelRecordReaderTest {
+
+	private ExecutorService executor;
+
+	private ParallelRecordReader<RecordCollector> reader;
+
+	@Before
+	public void beforeTest() {
+		executor = Executors.newFixedThreadPool(4);
+		reader = new ParallelRecordReader<RecordCollector>(executor, new ParallelArrayReader.HandlerFactory<RecordCollector>() {
+			public RecordCollector createHandler() {
+				return new RecordCollector();
+			}
+		});
+		reader.setWorkerCount(3);
+		reader.setBatchSize(16);
+	}
+
+	@After
+	public void afterTest() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testAllRecordsAreDelivered() throws Exception {
+		StringBuilder json = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			json.append("{\"id\":").append(i).append(",\"text\":\"").append(i % 7 == 0 ? "a much longer line " : "").append("\"}\n");
+		}
+		// the last line does not have to end with a newline
+		json.append("{\"id\":500}");
+
+		List<RecordCollector> handlers = reader.parse(new StringReader(json.toString()));
+		assertEquals(3, handlers.size());
+		boolean[] seen = new boolean[501];
+		int count = 0;
+		for (RecordCollector handler : handlers) {
+			int previous = -1;
+			for (int id : handler.ids) {
+				// each worker receives its records in document order
+				assertEquals(true, id > previous);
+				previous = id;
+				seen[id] = true;
+				count++;
+			}
+		}
+		assertEquals(501, count);
+		for (int i = 0; i < seen.length; i++) {
+			assertEquals(true, seen[i]);
+		}
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testInvalidRecordIsRejected() throws Exception {
+		reader.parse(new StringReader("{\"id\":1}\n{\"id\":2}\n{\"id\":}\n{\"id\":4}\n"));
+	}
+
+	@Test
+	public void testRecordsSpanningLinesAreRejected() throws Exception {
+		// the input fits into one batch, so it is not cut within a record
+		reader.setBatchSize(1024);
+		assertRejected("{\"id\":1}\n{\n  \"id\": 2\n}\n");
+		assertRejected("{\"id\":1,\"text\":\"two\nlines\"}\n");
+	}
+
+	@Test
+	public void testInterruptDoesNotMaskInvalidRecord() throws Exception {
+		// the line fills more than half of the batch, so it is dispatched before the end is read
+		StringReader input = new StringReader("{\"id\": }\n") {
+			@Override
+			public int read(char[] buffer, int offset, int length) throws IOException {
+				int read = super.read(buffer, offset, length);
+				if (read == -1) {
+					// interrupted while the workers are awaited
+					Thread.currentThread().interrupt();
+				}
+				return read;
+			}
+		};
+		try {
+			reader.parse(input);
+			fail("expected JsonParseException");
+		} catch (JsonParseException e) {
+			assertTrue(Thread.interrupted());
+		}
+	}
+
+	private void assertRejected(String json) throws Exception {
+		try {
+			reader.parse(new StringReader(json));
+			fail("expected JsonParseException");
+		} catch (JsonParseException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("every line must be one complete record"));
+		}
+	}
+
+	/**
+	 * Collects the id of each record.
+	 */
+	private static class RecordCollector extends SimpleContentHandler implements JsonRecordHandler {
+
+		private final List<Integer> ids = new ArrayList<Integer>();
+
+		public void startRecord() {
+		}
+
+		public void endRecord() {
+			ids.add((Integer) ((Map<?, ?>) getResult()).get("id"));
+		}
+
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.github.rasifix.saj;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.junit.Test;
+
+public class SimpleContentHandlerTest {
+
+	private static Object parse(SimpleContentHandler handler, String json) throws Exception {
+		new JsonReader(handler).parseJson(json);
+		return handler.getResult();
+	}
+
+	@Test
+	public void testArraysAreRandomAccessLists() throws Exception {
+		SimpleContentHandler handler = new SimpleContentHandler();
+		handler.setExpectedSize(3);
+		List<?> result = (List<?>) parse(handler, "[1,[\"a\"],{\"b\":null}]");
+		assertTrue(result instanceof RandomAccess);
+		assertEquals(1, result.get(0));
+		assertEquals(Arrays.asList("a"), result.get(1));
+		assertEquals(Collections.singletonMap("b", null), result.get(2));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutableList() throws Exception {
+		SimpleContentHandler handler = new SimpleContentHandler();
+		handler.setImmutable(true);
+		List<?> result = (List<?>) parse(handler, "[1,2]");
+		assertEquals(Arrays.asList(1, 2), result);
+		result.remove(0);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutableMap() throws Exception {
+		SimpleContentHandler handler = new SimpleContentHandler();
+		handler.setImmutable(true);
+		Map<?, ?> result = (Map<?, ?>) parse(handler, "{\"a\":[1]}");
+		assertEquals(Arrays.asList(1), result.get("a"));
+		result.clear();
+	}
+
+}
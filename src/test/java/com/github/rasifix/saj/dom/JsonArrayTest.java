@@ -0,0 +1,78 @@
+package com.github.rasifix.saj.dom;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.rasifix.saj.JsonReader;
+
+public class JsonArrayTest {
+
+	private static JsonArray parse(String json) throws Exception {
+		JsonModelBuilder builder = new JsonModelBuilder();
+		new JsonReader(builder).parseJson(json);
+		return (JsonArray) builder.getResult();
+	}
+
+	@Test
+	public void testDoubleArray() throws Exception {
+		JsonArray array = parse("[1.5,2.5,-0.25]");
+		assertEquals(3, array.size());
+		assertEquals(2.5, array.getDouble(1), 0.0);
+		assertEquals(Arrays.<Object>asList(1.5, 2.5, -0.25), array);
+	}
+
+	@Test
+	public void testIntArray() throws Exception {
+		JsonArray array = parse("[1,2,3]");
+		assertEquals(2, array.getInt(1));
+		assertEquals(3L, array.getLong(2));
+		assertEquals(Integer.valueOf(1), array.get(0));
+	}
+
+	@Test
+	public void testMixedNumbersKeepTheirTypes() throws Exception {
+		JsonArray array = parse("[0,0.5,1,4294967296,-3]");
+		assertEquals(Arrays.<Object>asList(0, 0.5, 1, 4294967296L, -3), array);
+		assertEquals(0.5, array.getDouble(1), 0.0);
+		assertEquals(4294967296L, array.getLong(3));
+		assertEquals(-3, array.getInt(4));
+		
+		JsonArray longs = parse("[8,4294967296,9]");
+		assertEquals(Arrays.<Object>asList(8, 4294967296L, 9), longs);
+	}
+	
+	@Test
+	public void testMixedNumbersAreStreamedWithTheirTypes() throws Exception {
+		JsonArray array = parse("[8,47.5,4294967296]");
+		JsonModelBuilder builder = new JsonModelBuilder();
+		array.streamTo(builder);
+		assertEquals(array, builder.getResult());
+		assertEquals(Integer.valueOf(8), ((JsonArray) builder.getResult()).get(0));
+	}
+	
+	@Test
+	public void testInexactLongWithDoubles() throws Exception {
+		JsonArray array = parse("[0.5,9007199254740993,1]");
+		assertEquals(Arrays.<Object>asList(0.5, 9007199254740993L, 1), array);
+	}
+	
+	@Test
+	public void testMixedArray() throws Exception {
+		JsonArray array = parse("[1,2.5,4294967296,\"a\",null]");
+		assertEquals(Arrays.<Object>asList(1, 2.5, 4294967296L, "a", null), array);
+		assertEquals(2.5, array.getDouble(1), 0.0);
+	}
+
+	@Test
+	public void testInsertIntoPrimitiveArray() throws Exception {
+		JsonArray array = new JsonArray();
+		array.addLong(1);
+		array.addLong(3);
+		array.add(1, 2L);
+		assertEquals(Arrays.<Object>asList(1L, 2L, 3L), array);
+	}
+
+}
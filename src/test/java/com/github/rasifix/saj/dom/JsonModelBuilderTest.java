@@ -0,0 +1,40 @@
+package com.github.rasifix.saj.dom;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.github.rasifix.saj.JsonReader;
+
+public class JsonModelBuilderTest {
+
+	@Test
+	public void testNestedModel() throws Exception {
+		JsonModelBuilder builder = new JsonModelBuilder();
+		new JsonReader(builder).parseJson("{\"a\":[{\"b\":[]},true],\"c\":{\"d\":null},\"e\":\"f\"}");
+		JsonObject result = (JsonObject) builder.getResult();
+		assertEquals(0, result.getArray("a").getObject(0).getArray("b").size());
+		assertEquals(true, result.getArray("a").getBoolean(1));
+		assertEquals(1, result.getObject("c").size());
+		assertEquals("f", result.getString("e"));
+	}
+
+	@Test
+	public void testReset() throws Exception {
+		JsonModelBuilder builder = new JsonModelBuilder();
+		JsonReader reader = new JsonReader(builder);
+		reader.parseJson("{\"a\":1}");
+		assertEquals(1, ((JsonObject) builder.getResult()).getInt("a"));
+		
+		builder.reset();
+		assertNull(builder.getResult());
+		reader.parseJson("[\"b\"]");
+		assertEquals("b", ((JsonArray) builder.getResult()).getString(0));
+		
+		builder.reset();
+		reader.parseJson("42");
+		assertEquals(42, builder.getResult());
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.github.rasifix.saj.dom;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.rasifix.saj.JsonReader;
+
+public class JsonObjectTest {
+
+	private static JsonArray parse(String json) throws Exception {
+		JsonModelBuilder builder = new JsonModelBuilder();
+		new JsonReader(builder).parseJson(json);
+		return (JsonArray) builder.getResult();
+	}
+
+	@Test
+	public void testObjectsWithSameShape() throws Exception {
+		JsonArray array = parse("[{\"a\":1,\"b\":2},{\"a\":3,\"b\":4}]");
+		JsonObject first = array.getObject(0);
+		JsonObject second = array.getObject(1);
+		assertEquals(2, first.getInt("b"));
+		assertEquals(3, second.getInt("a"));
+		
+		second.put("c", 5);
+		second.remove("a");
+		assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(first.keySet()));
+		assertEquals(Arrays.asList("b", "c"), new ArrayList<String>(second.keySet()));
+		assertFalse(first.containsKey("c"));
+	}
+
+	@Test
+	public void testShapeWithoutRoomForSuccessors() throws Exception {
+		Shape root = new Shape();
+		for (int i = 0; i < 8; i++) {
+			assertNotNull(root.add("key" + i));
+		}
+		assertSame(root.add("key3"), root.add("key3"));
+		assertNull(root.add("other"));
+	}
+
+	@Test
+	public void testObjectsWithDistinctFirstKeys() throws Exception {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < 12; i++) {
+			json.append(i > 0 ? "," : "").append("{\"first").append(i).append("\":").append(i).append(",\"second\":true}");
+		}
+		JsonArray array = parse(json.append("]").toString());
+		for (int i = 0; i < 12; i++) {
+			JsonObject object = array.getObject(i);
+			assertEquals(i, object.getInt("first" + i));
+			assertEquals(true, object.getBoolean("second"));
+			assertEquals(Arrays.asList("first" + i, "second"), new ArrayList<String>(object.keySet()));
+		}
+	}
+
+	@Test
+	public void testLargeObject() throws Exception {
+		JsonObject object = new JsonObject();
+		for (int i = 0; i < 100; i++) {
+			object.put("key" + i, i);
+		}
+		object.put("key50", "replaced");
+		object.remove("key10");
+		assertEquals(99, object.size());
+		assertEquals("replaced", object.get("key50"));
+		assertEquals(99, object.getInt("key99"));
+		assertNull(object.get("key10"));
+		assertEquals("key11", new ArrayList<String>(object.keySet()).get(10));
+	}
+
+}
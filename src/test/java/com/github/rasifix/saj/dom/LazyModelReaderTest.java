@@ -0,0 +1,83 @@
+package com.github.rasifix.saj.dom;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.rasifix.saj.JsonParseException;
+import com.github.rasifix.saj.JsonReader;
+
+public class LazyModelReaderTest {
+
+	private static final String JSON = "{\"name\":\"caf\\u00e9\",\"count\":3,\"ratio\":0.5,"
+			+ "\"tags\":[\"a\",\"b\\n\"],\"nested\":{\"flag\":true,\"none\":null}}";
+
+	@Test
+	public void testAccessMembers() throws Exception {
+		JsonObject object = (JsonObject) new LazyModelReader().parse(JSON);
+		assertEquals("caf\u00e9", object.getString("name"));
+		assertEquals(3, object.getInt("count"));
+		assertEquals(0.5, object.getDouble("ratio"), 0.0);
+		assertEquals("b\n", object.getArray("tags").getString(1));
+		assertEquals(true, object.getObject("nested").getBoolean("flag"));
+		assertNull(object.getObject("nested").get("none"));
+		assertEquals(Arrays.asList("name", "count", "ratio", "tags", "nested"), Arrays.asList(object.keySet().toArray()));
+	}
+
+	@Test
+	public void testEqualsEagerModel() throws Exception {
+		JsonModelBuilder builder = new JsonModelBuilder();
+		new JsonReader(builder).parseJson(JSON);
+		assertEquals(builder.getResult(), new LazyModelReader().parse(new StringReader(JSON)));
+	}
+
+	@Test
+	public void testUseBigDecimal() throws Exception {
+		LazyModelReader reader = new LazyModelReader();
+		reader.setUseBigDecimal(true);
+		JsonArray array = (JsonArray) reader.parse("[0.1]");
+		assertEquals(new BigDecimal("0.1"), array.get(0));
+	}
+
+	@Test
+	public void testNumberAtEndOfRange() throws Exception {
+		assertEquals(123, new LazyModelReader().parse("123456".toCharArray(), 0, 3));
+		JsonArray array = (JsonArray) new LazyModelReader().parse("[1,2]5".toCharArray(), 0, 5);
+		assertEquals(2, array.get(1));
+	}
+
+	@Test
+	public void testLongEscapedStrings() throws Exception {
+		StringBuilder padding = new StringBuilder();
+		for (int i = 0; i < 70; i++) {
+			padding.append((char) ('a' + i % 26));
+		}
+		String name = "n\\t" + padding;
+		String value = "v\\n" + padding;
+		JsonObject object = (JsonObject) new LazyModelReader().parse(
+				"{\"s\":\"x\\\"y\",\"" + name + "\":\"" + value + "\"}");
+		assertEquals("x\"y", object.getString("s"));
+		assertEquals("v\n" + padding, object.getString("n\t" + padding));
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testInvalidNumberIsRejected() throws Exception {
+		new LazyModelReader().parse("[1.e5]");
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testInvalidEscapeIsRejected() throws Exception {
+		new LazyModelReader().parse("[\"\\x\"]");
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testInvalidInputIsRejected() throws Exception {
+		new LazyModelReader().parse("{\"a\":[1,}");
+	}
+
+}